@@ -2,33 +2,70 @@ package com.p2pstream;
 
 import com.p2pstream.model.Constants;
 import com.p2pstream.model.MessageType;
+import com.p2pstream.net.tcp.ChunkAvailability;
+import com.p2pstream.net.tcp.ChunkJournal;
+import com.p2pstream.net.tcp.ChunkServer;
+import com.p2pstream.net.tcp.NioChunkServer;
 import com.p2pstream.net.tcp.ParallelDownloader;
 import com.p2pstream.net.tcp.TcpServer;
+import com.p2pstream.net.throttle.BandwidthManager;
 import com.p2pstream.net.udp.*;
 import com.p2pstream.service.FileService;
+import com.p2pstream.service.RangeStreamer;
 import com.p2pstream.service.PacketCodec;
+import com.p2pstream.service.ChunkBufferPool;
+import com.p2pstream.service.StreamMetrics;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.Javalin;
 import io.javalin.http.staticfiles.Location;
-import io.javalin.websocket.WsContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletResponse;
 
 import java.io.*;
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
 
 public class HeadlessPeer {
 
-    public static final Set<WsContext> webClients = ConcurrentHashMap.newKeySet();
-    public static final ConcurrentHashMap<String, Set<String>> searchResultsCache = new ConcurrentHashMap<>();
+    // fileHash -> dosyayı ilan eden peer'lar; aramalar arasında birleşir, TTL ile yaşlanır
+    public static final FileOwnerCache searchResultsCache = new FileOwnerCache(Constants.SEARCH_OWNER_TTL_MS);
+    // fileHash -> arama cevabında ilan edilen Merkle kökü (chunk hash listesini doğrulamak için)
+    public static final ConcurrentHashMap<String, String> merkleRootCache = new ConcurrentHashMap<>();
+    // Aynı sorgu kısa sürede tekrar istenirse ağa yeniden gitmez, devam eden aramaya ortak olur
+    private static final SearchCoalescer searchCoalescer = new SearchCoalescer(Constants.SEARCH_COALESCE_MS);
 
-    public static final ConcurrentHashMap<String, Set<Integer>> downloadedChunksCache = new ConcurrentHashMap<>();
+    // fileName -> diskte hazır chunk'lar; /api/watch okuyucuları eksik chunk'ı burada bekler
+    public static final ConcurrentHashMap<String, ChunkAvailability> chunkAvailability = new ConcurrentHashMap<>();
+    // fileName -> devam eden indirme (oynatma noktasını downloader'a bildirmek için)
+    public static final ConcurrentHashMap<String, ParallelDownloader> activeDownloads = new ConcurrentHashMap<>();
+    // fileName -> izleyicinin en son ulaştığı chunk; seek'i ilk yoklamadan ve kaldığı yerden devamdan ayırır
+    private static final ConcurrentHashMap<String, Long> lastPlayheadChunk = new ConcurrentHashMap<>();
 
     private static UdpServer udpServer;
+    private static ChunkServer chunkServer;
+    private static FileService fileService;
+    private static final ObjectMapper JSON = new ObjectMapper();
+    // Web'e giden tüm olaylar buradan: çağıran thread (UDP, indirme) tarayıcıyı hiç beklemez
+    private static final WebEventBus events = new WebEventBus(JSON, Constants.WEB_EVENT_BUFFER,
+            Constants.WEB_EVENT_FLUSH_MS, Constants.WEB_CLIENT_MAX_PENDING, Constants.WEB_CLIENT_STALL_MS);
+    // /api/watch: beklenen chunk inince yayına kaldığı yerden devam eden thread'ler (bekleme sırasında thread yok)
+    private static final ExecutorService watchExecutor = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "watch-stream");
+        t.setDaemon(true);
+        return t;
+    });
 
     public static void main(String[] args) {
         try {
@@ -41,8 +78,8 @@ public class HeadlessPeer {
             new File(Constants.BUFFER_FOLDER).mkdirs();
             new File(Constants.SHARED_FOLDER).mkdirs();
 
-            FileService fileService = new FileService("shared_videos");
-            fileService.scanFiles();
+            // Klasör constructor içinde bir kere taranır
+            fileService = new FileService("shared_videos");
 
             String peerId = UUID.randomUUID().toString();
             String myIp = getRealIp();
@@ -52,12 +89,19 @@ public class HeadlessPeer {
             UdpSender udpSender = new UdpSender();
             MyUdpHandler udpHandler = new MyUdpHandler(udpSender, fileService, peerId, myIp, myPort);
 
+            // Bundan sonraki değişiklikler (kopyalanan/silinen dosyalar) tam tarama olmadan işlenir
+            fileService.startWatching();
+
             udpServer = new UdpServer(Constants.UDP_PORT, udpHandler);
             udpServer.start();
 
-            new TcpServer().start();
+            chunkServer = "thread".equalsIgnoreCase(Constants.TCP_SERVER_MODE) ? new TcpServer(fileService) : new NioChunkServer(fileService);
+            chunkServer.start();
+
+            resumePartialDownloads();
 
             // --- WEB GUI ---
+            events.start();
             try {
                 if (Files.exists(Paths.get("/app/web"))) {
                     Javalin app = Javalin.create(config -> {
@@ -84,11 +128,16 @@ public class HeadlessPeer {
                     // 3. SEARCH API
                     app.post("/api/search", ctx -> {
                         if (!udpServer.isRunning()) { ctx.status(400).result("Offline"); return; }
-                        String query = ctx.queryParam("q");
-                        searchResultsCache.clear();
-                        Packet p = Packet.simpleText(MessageType.SEARCH, myIp, myPort, Constants.ttl, query);
-                        udpSender.sendToAllLocalSubnets(PacketCodec.encode(p), Constants.UDP_PORT);
-                        ctx.result("OK");
+                        String query = Objects.requireNonNullElse(ctx.queryParam("q"), "");
+                        List<ReplyBatch.Entry> soFar = searchCoalescer.join(query);
+                        if (soFar != null) {
+                            // Aynı arama zaten sürüyor: o ana kadarki sonuçlar döner, gerisi ortak akıştan gelir
+                            ctx.json(Map.of("coalesced", true, "items", resultItems(soFar)));
+                            return;
+                        }
+                        // Komşu özetlerine göre yönlendirilir; yönlendirilemeyen sorgu eskisi gibi yayılır
+                        udpHandler.startSearch(query);
+                        ctx.json(Map.of("coalesced", false, "items", List.of()));
                     });
 
                     // 4. DOWNLOAD API
@@ -97,18 +146,24 @@ public class HeadlessPeer {
                         String fileHash = ctx.queryParam("hash");
                         long size = Long.parseLong(ctx.queryParam("size"));
 
-                        Set<String> owners = searchResultsCache.getOrDefault(fileHash, new HashSet<>());
+                        Set<String> owners = searchResultsCache.owners(fileHash);
                         String fallbackIp = ctx.queryParam("ip");
                         if (fallbackIp != null) owners.add(fallbackIp);
                         owners.remove(myIp);
 
                         if (owners.isEmpty()) { ctx.status(400).result("No peers found."); return; }
-
-                        // Cache'i temizle/hazırla
-                        downloadedChunksCache.put(fileName, ConcurrentHashMap.newKeySet());
+                        // Heartbeat'e cevap vermeyen peer'lara TCP bağlantı timeout'u harcama
+                        PeerTable peers = udpHandler.getPeerTable();
+                        owners.removeIf(ip -> peers.get(ip) != null && !peers.isAlive(ip));
+                        if (owners.isEmpty()) { ctx.status(400).result("No live peers."); return; }
 
                         List<String> sourceIps = new ArrayList<>(owners);
-                        ParallelDownloader downloader = new ParallelDownloader(fileName, fileHash, size, sourceIps);
+                        ParallelDownloader downloader = new ParallelDownloader(fileName, fileHash, size, sourceIps, merkleRootCache.get(fileHash), fileService);
+                        // Aynı dosya için ikinci bir downloader aynı buffer/journal'a yazmasın
+                        if (activeDownloads.putIfAbsent(fileName, downloader) != null) { ctx.result("Download already running"); return; }
+
+                        // Cache'i temizle/hazırla (journal'dan devam ediliyorsa downloader tekrar doldurur)
+                        chunkAvailability.put(fileName, new ChunkAvailability(fileName));
                         new Thread(downloader).start();
                         ctx.result("Download Started");
                     });
@@ -119,88 +174,157 @@ public class HeadlessPeer {
                         File bufferFile = new File(Constants.BUFFER_FOLDER + "/" + fileName);
                         File sharedFile = new File(Constants.SHARED_FOLDER + "/" + fileName);
 
-                        // Eğer shared klasöründeyse (indirme bitmiş), direkt oradan sun
-                        if (sharedFile.exists()) {
-                            serveFileStandard(ctx, sharedFile);
-                            return;
-                        }
-
-                        // Buffer'da yoksa 404
-                        if (!bufferFile.exists()) { ctx.status(404).result("File not found"); return; }
+                        // Eğer shared klasöründeyse (indirme bitmiş) oradan, değilse inen buffer'dan sun
+                        File file = sharedFile.exists() ? sharedFile : bufferFile;
+                        if (!file.exists()) { ctx.status(404).result("File not found"); return; }
+                        // İndirme sürüyorsa her chunk okunmadan önce diske inmesi beklenir
+                        ChunkAvailability availability = file == bufferFile ? chunkAvailability.get(fileName) : null;
 
-                        long fileLen = bufferFile.length();
-                        String range = ctx.header("Range");
-                        ctx.contentType("video/mp4");
+                        long fileLen = file.length();
                         ctx.header("Accept-Ranges", "bytes");
+                        List<RangeStreamer.Range> ranges = RangeStreamer.parse(ctx.header("Range"), fileLen);
+                        if (ranges != null && ranges.isEmpty()) {
+                            ctx.status(416).header("Content-Range", "bytes */" + fileLen);
+                            return;
+                        }
 
-                        if (range == null) {
-                            ctx.status(200);
-                            ctx.result(new FileInputStream(bufferFile));
-                        } else {
-                            String[] parts = range.replace("bytes=", "").split("-");
-                            long start = Long.parseLong(parts[0]);
-                            long end = parts.length > 1 ? Long.parseLong(parts[1]) : fileLen - 1;
-                            if (end >= fileLen) end = fileLen - 1;
-                            long len = end - start + 1;
-
-                            ctx.status(206);
-                            ctx.header("Content-Range", "bytes " + start + "-" + end + "/" + fileLen);
-                            ctx.header("Content-Length", String.valueOf(len));
-
-                            RandomAccessFile raf = new RandomAccessFile(bufferFile, "r");
-                            raf.seek(start);
-
-                            InputStream is = new InputStream() {
-                                long bytesLeft = len;
-                                long currentPos = start;
-
-                                @Override
-                                public int read() throws IOException {
-                                    waitForData(currentPos);
-                                    int b = raf.read();
-                                    if (b != -1) {
-                                        bytesLeft--;
-                                        currentPos++;
-                                    }
-                                    return b;
+                        long requestStart = System.nanoTime();
+                        // Seek TTFB sadece oynatma noktası gerçekten taşındığında ölçülür ("bytes=0-" yoklaması sayılmaz)
+                        Long previousChunk = lastPlayheadChunk.get(fileName);
+                        boolean seek = ranges != null && ranges.get(0).start > 0
+                                && (previousChunk == null || previousChunk != ranges.get(0).start / Constants.CHUNK_SIZE);
+                        ParallelDownloader downloader = availability != null ? activeDownloads.get(fileName) : null;
+                        // Seek: istenen aralık ve ardındaki read-ahead penceresi öncelikli indirilsin
+                        if (downloader != null && ranges != null) downloader.updatePlayhead(ranges.get(0).start);
+
+                        LongConsumer onProgress = new LongConsumer() {
+                            boolean firstByteSent = false;
+                            long playheadChunk = -1;
+
+                            @Override
+                            public void accept(long position) {
+                                if (!firstByteSent) {
+                                    firstByteSent = true;
+                                    if (seek) StreamMetrics.recordSeekTtfb((System.nanoTime() - requestStart) / 1_000_000);
                                 }
-
-                                @Override
-                                public int read(byte[] b, int off, int l) throws IOException {
-                                    waitForData(currentPos);
-                                    int read = raf.read(b, off, (int) Math.min(l, bytesLeft));
-                                    if (read != -1) {
-                                        bytesLeft -= read;
-                                        currentPos += read;
-                                    }
-                                    return read;
+                                // Oynatıcı yeni bir chunk'a geçtikçe öncelik penceresini kaydır
+                                long chunk = position / Constants.CHUNK_SIZE;
+                                if (chunk != playheadChunk) {
+                                    playheadChunk = chunk;
+                                    lastPlayheadChunk.put(fileName, chunk);
+                                    if (downloader != null) downloader.updatePlayhead(position);
                                 }
+                            }
+                        };
+
+                        HttpServletResponse res = ctx.res();
+                        String boundary = null;
+                        if (ranges == null) {
+                            ctx.status(200).contentType("video/mp4");
+                            res.setContentLengthLong(fileLen);
+                        } else if (ranges.size() == 1) {
+                            ctx.status(206).contentType("video/mp4");
+                            ctx.header("Content-Range", ranges.get(0).contentRange(fileLen));
+                            res.setContentLengthLong(ranges.get(0).length());
+                        } else {
+                            boundary = RangeStreamer.newBoundary();
+                            ctx.status(206).contentType("multipart/byteranges; boundary=" + boundary);
+                            res.setContentLengthLong(RangeStreamer.multipartLength(ranges, boundary, "video/mp4", fileLen));
+                        }
+                        long start = ranges == null ? 0 : ranges.get(0).start;
+                        long length = ranges == null ? fileLen : ranges.get(0).length();
+
+                        if (availability == null) {
+                            // Dosya tamamen diskte: doğrudan yaz
+                            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                                RangeStreamer.Sink sink = RangeStreamer.sinkFor(res.getOutputStream());
+                                if (boundary == null) RangeStreamer.copy(channel, start, length, sink, onProgress);
+                                else RangeStreamer.writeMultipart(channel, ranges, boundary, "video/mp4", fileLen, sink, onProgress);
+                            } catch (IOException e) {
+                                // İstemci gitti (seek/kapatma): yanıt yarıda kesilir
+                            }
+                            return;
+                        }
 
-                                @Override
-                                public void close() throws IOException { raf.close(); }
+                        // İndirme sürüyor: inmemiş chunk asenkron beklenir, giden izleyici thread tutmaz
+                        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+                        RangeStreamer.Sink sink = RangeStreamer.sinkFor(res.getOutputStream());
+                        String multipartBoundary = boundary;
+                        RangeStreamer.StreamHandle handle = new RangeStreamer.StreamHandle();
+                        ctx.future(() -> {
+                            // İstek biterse (istemci gitti, hata, async timeout) beklenen chunk iptal edilir, kanal kapanır
+                            ctx.req().getAsyncContext().addListener(new AsyncListener() {
+                                @Override public void onComplete(AsyncEvent event) { stop(); }
+                                @Override public void onTimeout(AsyncEvent event) { stop(); }
+                                @Override public void onError(AsyncEvent event) { stop(); }
+                                @Override public void onStartAsync(AsyncEvent event) {}
+
+                                private void stop() {
+                                    handle.cancel();
+                                    closeQuietly(channel);
+                                }
+                            });
+                            return (multipartBoundary == null
+                                    ? RangeStreamer.copyAsync(channel, start, length, availability, sink, onProgress,
+                                            watchExecutor, handle)
+                                    : RangeStreamer.writeMultipartAsync(channel, ranges, multipartBoundary, "video/mp4",
+                                            fileLen, availability, sink, onProgress, watchExecutor, handle))
+                                    .handle((v, e) -> {
+                                        // Hata: istemci gitti veya chunk zamanında inmedi, yanıt yarıda kesilir
+                                        closeQuietly(channel);
+                                        return null;
+                                    });
+                        });
+                    });
 
-                                private void waitForData(long pos) {
-                                    int chunkIndex = (int) (pos / Constants.CHUNK_SIZE);
-                                    Set<Integer> downloaded = downloadedChunksCache.get(fileName);
+                    // 6. STATS API
+                    app.get("/api/stats", ctx -> {
+                        Map<String, Object> stats = new LinkedHashMap<>();
+                        stats.put("tcpServerMode", Constants.TCP_SERVER_MODE);
+                        stats.put("tcpOpenConnections", chunkServer.getOpenConnections());
+                        stats.put("activeDownloads", activeDownloads.size());
+                        stats.put("stream", StreamMetrics.snapshot());
+                        stats.put("indexing", fileService.getScanStats());
+                        stats.put("udp", udpServer.snapshot());
+                        stats.put("seenCache", udpHandler.getSeenCacheStats());
+                        stats.put("livePeers", udpHandler.getPeerTable().livePeers(null).size());
+                        stats.put("summaries", udpHandler.getSummaryStats());
+                        stats.put("replyCache", udpHandler.getReplyCacheStats());
+                        stats.put("searches", searchCoalescer.snapshot());
+                        stats.put("fileOwners", searchResultsCache.snapshot());
+                        stats.put("webEvents", events.snapshot());
+                        stats.put("bufferPools", Map.of("direct", ChunkBufferPool.SHARED.snapshot(),
+                                "heap", ChunkBufferPool.HEAP.snapshot()));
+                        ctx.json(stats);
+                    });
 
-                                    if (downloaded != null) {
-                                        int waitTime = 0;
-                                        while (!downloaded.contains(chunkIndex) && waitTime < 30000) {
-                                            try { Thread.sleep(100); waitTime += 100; } catch (Exception e) {}
-                                        }
-                                    }
-                                }
-                            };
-                            ctx.result(is);
+                    // 7. PEER TABLE API
+                    app.get("/api/peers", ctx -> ctx.json(udpHandler.getPeerTable().snapshot()));
+
+                    // 8. BANDWIDTH LIMITS API (byte/saniye, 0 = sınırsız)
+                    app.get("/api/limits", ctx -> ctx.json(BandwidthManager.snapshot()));
+                    app.post("/api/limits", ctx -> {
+                        try {
+                            BandwidthManager.configure(
+                                    parseRate(ctx.queryParam("globalDownload")),
+                                    parseRate(ctx.queryParam("globalUpload")),
+                                    parseRate(ctx.queryParam("perDownload")),
+                                    parseRate(ctx.queryParam("perPeerDownload")),
+                                    parseRate(ctx.queryParam("perPeerUpload")));
+                        } catch (NumberFormatException e) {
+                            ctx.status(400).result("Invalid rate: " + e.getMessage());
+                            return;
                         }
+                        broadcastLog("⚙️ Bandwidth limits updated: " + BandwidthManager.snapshot());
+                        ctx.json(BandwidthManager.snapshot());
                     });
 
                     app.ws("/ws", ws -> {
                         ws.onConnect(ctx -> {
                             ctx.session.setIdleTimeout(Duration.ofMinutes(60));
-                            webClients.add(ctx);
+                            events.addClient(ctx);
                         });
-                        ws.onClose(ctx -> webClients.remove(ctx));
+                        ws.onClose(ctx -> events.removeClient(ctx));
                     });
                 }
             } catch (Exception e) {}
@@ -208,14 +332,85 @@ public class HeadlessPeer {
         } catch (Exception e) { e.printStackTrace(); }
     }
 
-    private static void serveFileStandard(io.javalin.http.Context ctx, File file) throws IOException {
-        ctx.contentType("video/mp4");
-        ctx.writeSeekableStream(new FileInputStream(file), "video/mp4");
+    // Yeniden başlatmadan sonra BUFFER_FOLDER'daki .parts journal'larını bul ve eksik chunk'ları indirmeye devam et
+    private static void resumePartialDownloads() {
+        File[] journals = new File(Constants.BUFFER_FOLDER).listFiles((dir, name) -> name.endsWith(ChunkJournal.SUFFIX));
+        if (journals == null) return;
+
+        for (File journalFile : journals) {
+            ChunkJournal journal = ChunkJournal.load(journalFile);
+            if (journal == null || !journal.getDataFile().isFile() || journal.getPeers().isEmpty()) {
+                System.out.println("⚠️ Geçersiz/boş journal atlandı: " + journalFile.getName());
+                continue;
+            }
+            String fileName = journal.getFileName();
+            System.out.println("♻️ Yarım kalan indirme bulundu: " + fileName + " (" + journal.completed().cardinality() + " chunk hazır)");
+
+            chunkAvailability.put(fileName, new ChunkAvailability(fileName));
+            ParallelDownloader downloader = new ParallelDownloader(fileName, journal.getFileHash(),
+                    journal.getTotalSize(), journal.getPeers(), journal.getMerkleRoot(), fileService);
+            activeDownloads.put(fileName, downloader);
+            new Thread(downloader).start();
+        }
+    }
+
+    private static Long parseRate(String value) {
+        if (value == null || value.isBlank()) return null;
+        long rate = Long.parseLong(value.trim());
+        if (rate < 0) throw new NumberFormatException(value);
+        return rate;
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try { c.close(); } catch (IOException ignored) {}
     }
 
     public static void broadcastToWeb(String resultType, String fileName, long size, String hash, String peerIp) {
-        searchResultsCache.computeIfAbsent(hash, k -> ConcurrentHashMap.newKeySet()).add(peerIp);
-        sendJson(String.format("{\"type\":\"RESULT\", \"resultType\":\"%s\", \"fileName\":\"%s\", \"size\":%d, \"hash\":\"%s\", \"peerIp\":\"%s\"}", resultType, fileName, size, hash, peerIp));
+        broadcastToWeb(resultType, fileName, size, hash, peerIp, null);
+    }
+
+    public static void broadcastToWeb(String resultType, String fileName, long size, String hash, String peerIp, String merkleRoot) {
+        if (merkleRoot != null) merkleRootCache.put(hash, merkleRoot);
+        searchResultsCache.add(hash, peerIp);
+        if ("SEARCH_RESULT".equals(resultType)) {
+            searchCoalescer.onResults(List.of(new ReplyBatch.Entry(peerIp, Constants.UDP_PORT, hash, fileName, size, merkleRoot)));
+        }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", "RESULT");
+        event.put("resultType", resultType);
+        event.put("fileName", fileName);
+        event.put("size", size);
+        event.put("hash", hash);
+        event.put("peerIp", peerIp);
+        events.publish(event);
+    }
+
+    /** Bir batch cevabındaki tüm dosyaları önbelleklere işler ve web'e tek bir RESULTS mesajı gönderir. */
+    public static void broadcastToWeb(String resultType, List<ReplyBatch.Entry> entries) {
+        for (ReplyBatch.Entry e : entries) {
+            if (e.merkleRoot != null) merkleRootCache.put(e.fileHash, e.merkleRoot);
+            searchResultsCache.add(e.fileHash, e.sourceIp);
+        }
+        if ("SEARCH_RESULT".equals(resultType)) searchCoalescer.onResults(entries);
+
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "RESULTS");
+        message.put("resultType", resultType);
+        message.put("items", resultItems(entries));
+        events.publish(message);
+    }
+
+    private static List<Map<String, Object>> resultItems(List<ReplyBatch.Entry> entries) {
+        List<Map<String, Object>> items = new ArrayList<>(entries.size());
+        for (ReplyBatch.Entry e : entries) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("fileName", e.fileName);
+            item.put("size", e.fileSize);
+            item.put("hash", e.fileHash);
+            item.put("peerIp", e.sourceIp);
+            items.add(item);
+        }
+        return items;
     }
 
     private static String getRealIp() {
@@ -235,16 +430,21 @@ public class HeadlessPeer {
     }
 
     public static void broadcastLog(String message) {
-        sendJson(String.format("{\"type\":\"LOG\", \"message\":\"%s\"}", message));
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", "LOG");
+        event.put("message", message);
+        events.publish(event);
     }
 
     public static void broadcastProgress(String hash, long current, long total, String status) {
         int percent = (total > 0) ? (int)((current * 100) / total) : 0;
-        sendJson(String.format("{\"type\":\"PROGRESS\", \"hash\":\"%s\", \"current\":%d, \"total\":%d, \"percent\":%d, \"status\":\"%s\"}", hash, current, total, percent, status));
-    }
-
-    private static void sendJson(String json) {
-        if (webClients.isEmpty()) return;
-        for (WsContext ctx : webClients) { if (ctx.session.isOpen()) ctx.send(json); }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("type", "PROGRESS");
+        event.put("hash", hash);
+        event.put("current", current);
+        event.put("total", total);
+        event.put("percent", percent);
+        event.put("status", status);
+        events.publishProgress(hash, event);
     }
 }
\ No newline at end of file
@@ -20,11 +20,9 @@ public class Main {
             // 1. Dosya Servisi Hazırlığı
             // Docker volume ile bağlanan klasör: /app/shared_videos
             String rootPath = "shared_videos";
+            // Mevcut dosyalar constructor içinde taranıp hash'lenir (YTlogo.png burada bulunacak)
             FileService fileService = new FileService(rootPath);
 
-            // Mevcut dosyaları tara ve hash'le (YTlogo.png burada bulunacak)
-            fileService.scanFiles();
-
             // Kimlik Bilgileri
             String peerId = UUID.randomUUID().toString();
             String myIp = InetAddress.getLocalHost().getHostAddress();
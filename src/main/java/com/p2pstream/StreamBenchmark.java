@@ -0,0 +1,147 @@
+package com.p2pstream;
+
+import com.p2pstream.model.Constants;
+import com.p2pstream.service.RangeStreamer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * /api/watch range servisinin eski ve yeni yolunu eşzamanlı izleyici sayısına göre karşılaştırır.
+ *   eski: izleyici başına RandomAccessFile + InputStream, Javalin gibi 8 KB'lık byte[] ile kopya
+ *   yeni: RangeStreamer, FileChannel konumsal okuma + havuzdan direct buffer
+ * Her izleyici rastgele bir noktadan rangeMB'lık aralıklar ister (seek + oynatma). İki yol da aynı
+ * çıkışa (veriyi atan bir OutputStream) yazar; yeni yol RangeStreamer.sinkFor üzerinden gider. Jetty'nin
+ * HttpOutput'a kopyasız yazımı bu ölçüme dahil değil.
+ *
+ * Kullanım: java -cp p2p.jar com.p2pstream.StreamBenchmark [fileMB=512] [rangeMB=2] [seconds=3] [viewers=1,4,16,64]
+ */
+public class StreamBenchmark {
+
+    private static final int JAVALIN_COPY_BUFFER = 8 * 1024; // Kotlin InputStream.copyTo varsayılanı
+
+    private interface RangeServer {
+        void serve(File file, long start, long length) throws IOException;
+    }
+
+    public static void main(String[] args) throws Exception {
+        int fileMb = args.length > 0 ? Integer.parseInt(args[0]) : 512;
+        int rangeMb = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+        String viewerList = args.length > 3 ? args[3] : "1,4,16,64";
+
+        Path path = Files.createTempFile("p2p-bench", ".mp4");
+        File file = path.toFile();
+        file.deleteOnExit();
+        writeTestFile(path, (long) fileMb * 1024 * 1024);
+        long rangeLen = (long) rangeMb * 1024 * 1024;
+
+        System.out.println("📊 Range servis karşılaştırması: dosya " + fileMb + " MB, aralık " + rangeMb + " MB, "
+                + seconds + " s/ölçüm, chunk " + Constants.CHUNK_SIZE / 1024 + " KB");
+        System.out.printf("%8s | %14s | %14s | %8s%n", "viewers", "legacy MB/s", "channel MB/s", "speedup");
+
+        for (String v : viewerList.split(",")) {
+            int viewers = Integer.parseInt(v.trim());
+            run(file, rangeLen, viewers, 1, StreamBenchmark::legacy); // ısınma
+            double legacy = run(file, rangeLen, viewers, seconds, StreamBenchmark::legacy);
+            run(file, rangeLen, viewers, 1, StreamBenchmark::channel);
+            double channel = run(file, rangeLen, viewers, seconds, StreamBenchmark::channel);
+            System.out.printf("%8d | %14.1f | %14.1f | %7.2fx%n", viewers, legacy, channel, channel / legacy);
+        }
+        Files.deleteIfExists(path);
+    }
+
+    private static void writeTestFile(Path path, long size) throws IOException {
+        try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            ByteBuffer block = ByteBuffer.allocateDirect(Constants.CHUNK_SIZE);
+            byte[] random = new byte[Constants.CHUNK_SIZE];
+            ThreadLocalRandom.current().nextBytes(random);
+            for (long written = 0; written < size; written += random.length) {
+                block.clear();
+                block.put(random, 0, (int) Math.min(random.length, size - written)).flip();
+                while (block.hasRemaining()) out.write(block);
+            }
+        }
+    }
+
+    // İzleyiciler süre dolana kadar rastgele aralık ister; toplam MB/s döner
+    private static double run(File file, long rangeLen, int viewers, int seconds, RangeServer server) throws Exception {
+        long fileLen = file.length();
+        long deadline = System.nanoTime() + seconds * 1_000_000_000L;
+        AtomicLong bytes = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(viewers);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < viewers; i++) {
+            Thread t = new Thread(() -> {
+                try {
+                    ThreadLocalRandom rnd = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        long from = rnd.nextLong(Math.max(1, fileLen - rangeLen));
+                        server.serve(file, from, rangeLen);
+                        bytes.addAndGet(rangeLen);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Benchmark hatası: " + e.getMessage());
+                } finally {
+                    done.countDown();
+                }
+            }, "viewer-" + i);
+            t.start();
+        }
+        done.await();
+        double secs = (System.nanoTime() - start) / 1e9;
+        return bytes.get() / (1024.0 * 1024.0) / secs;
+    }
+
+    // Eski /api/watch: RandomAccessFile'ı saran InputStream, Javalin'in copyTo'su ile çıkışa
+    private static void legacy(File file, long start, long length) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(start);
+            InputStream is = new InputStream() {
+                long left = length;
+
+                @Override
+                public int read() throws IOException {
+                    if (left <= 0) return -1;
+                    left--;
+                    return raf.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (left <= 0) return -1;
+                    int read = raf.read(b, off, (int) Math.min(len, left));
+                    if (read > 0) left -= read;
+                    return read;
+                }
+            };
+            byte[] buf = new byte[JAVALIN_COPY_BUFFER];
+            int n;
+            while ((n = is.read(buf, 0, buf.length)) > 0) DISCARD.write(buf, 0, n);
+        }
+    }
+
+    // Yeni yol: konumsal okuma, havuzdan direct buffer, eskisiyle aynı çıkışa sinkFor ile
+    private static void channel(File file, long start, long length) throws IOException {
+        try (FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            RangeStreamer.copy(ch, start, length, RangeStreamer.sinkFor(DISCARD), null);
+        }
+    }
+
+    private static final OutputStream DISCARD = new OutputStream() {
+        @Override public void write(int b) {}
+        @Override public void write(byte[] b, int off, int len) {}
+    };
+}
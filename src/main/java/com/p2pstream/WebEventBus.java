@@ -0,0 +1,318 @@
+package com.p2pstream;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.websocket.WsContext;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Web arayüzüne giden olaylar (LOG, RESULT(S), PROGRESS) için asenkron olay yolu.
+ *
+ * Yayınlayan thread (UDP worker, indirme thread'i) sadece olayı sınırlı bir halka tampona koyar;
+ * tek bir "web-events" thread'i en fazla flushMs'de bir tamponu boşaltıp olayları tek bir BATCH
+ * frame'inde Jackson ile serileştirir ve her istemciye asenkron gönderir. PROGRESS olayları hash
+ * başına birleştirilir (en son durum kazanır). Tampon dolarsa en eski olay atılır.
+ *
+ * Gönderimi bitmemiş frame sayısı maxPending'e ulaşan istemci o frame'leri atlar (seyreltme): atlanan
+ * sıralı olaylar (LOG, RESULT(S)) istemcinin kendi birikmiş listesinde tutulur (en fazla capacity,
+ * taşarsa en eskisi gider) ve bir sonraki frame'de tüm güncel PROGRESS durumlarıyla birlikte gönderilir.
+ * stallMs boyunca hiç ilerlemeyen istemci kapatılır.
+ */
+public final class WebEventBus {
+
+    private static final int MAX_TRACKED_PROGRESS = 256;
+
+    private static final class Client {
+        final WsContext ctx;
+        final AtomicInteger pending = new AtomicInteger();
+        volatile long blockedSinceNanos = 0;
+        volatile boolean needsFullProgress = true; // yeni bağlanan da güncel durumu görsün
+        final ArrayDeque<Object> backlog = new ArrayDeque<>(); // atlanan sıralı olaylar; sadece gönderim thread'i
+
+        Client(WsContext ctx) {
+            this.ctx = ctx;
+        }
+    }
+
+    private final ObjectMapper json;
+    private final long flushNanos;
+    private final int maxPending;
+    private final long stallNanos;
+
+    // --- TAMPON (lock altında) ---
+    private final Object lock = new Object();
+    private final Object[] ring;
+    private int head = 0;
+    private int size = 0;
+    private final Map<String, Map<String, Object>> latestProgress = new LinkedHashMap<>(); // hash -> son PROGRESS
+    private final Set<String> dirtyProgress = new LinkedHashSet<>();
+
+    private final Map<WsContext, Client> clients = new ConcurrentHashMap<>();
+    private Thread sender;
+    private volatile boolean running = false;
+
+    // --- SAYAÇLAR ---
+    private final LongAdder published = new LongAdder();
+    private final LongAdder progressMerged = new LongAdder();
+    private final LongAdder droppedEvents = new LongAdder();
+    private final LongAdder frames = new LongAdder();
+    private final LongAdder skippedFrames = new LongAdder();
+    private final LongAdder droppedClients = new LongAdder();
+    private final LongAdder sendErrors = new LongAdder();
+
+    public WebEventBus(ObjectMapper json, int capacity, long flushMs, int maxPending, long stallMs) {
+        this.json = json;
+        this.ring = new Object[capacity];
+        this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMs);
+        this.maxPending = maxPending;
+        this.stallNanos = TimeUnit.MILLISECONDS.toNanos(stallMs);
+    }
+
+    public synchronized void start() {
+        if (running) return;
+        running = true;
+        sender = new Thread(this::sendLoop, "web-events");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (sender != null) sender.interrupt();
+    }
+
+    // --- İSTEMCİLER ---
+
+    public void addClient(WsContext ctx) {
+        clients.put(ctx, new Client(ctx));
+        wakeUp();
+    }
+
+    public void removeClient(WsContext ctx) {
+        clients.remove(ctx);
+    }
+
+    public int clientCount() {
+        return clients.size();
+    }
+
+    // --- YAYINLAMA ---
+
+    /** Sıralı olay (LOG, RESULT, RESULTS); istemci yoksa tutulmaz. */
+    public void publish(Map<String, Object> event) {
+        if (clients.isEmpty()) return;
+        published.increment();
+        synchronized (lock) {
+            if (size == ring.length) {
+                // Tampon dolu: en eski olay gider
+                ring[head] = null;
+                head = (head + 1) % ring.length;
+                size--;
+                droppedEvents.increment();
+            }
+            ring[(head + size) % ring.length] = event;
+            if (++size == 1) lock.notify(); // sadece boştan dolana geçerken uyandır
+        }
+    }
+
+    /** İndirme ilerlemesi: aynı hash için gönderilmemiş eski durumun üzerine yazar. */
+    public void publishProgress(String hash, Map<String, Object> event) {
+        published.increment();
+        synchronized (lock) {
+            latestProgress.remove(hash); // sona taşı: en eski takip edilen indirme önce atılır
+            latestProgress.put(hash, event);
+            if (latestProgress.size() > MAX_TRACKED_PROGRESS) {
+                String eldest = latestProgress.keySet().iterator().next();
+                latestProgress.remove(eldest);
+                dirtyProgress.remove(eldest);
+            }
+            if (!dirtyProgress.add(hash)) progressMerged.increment();
+            else if (dirtyProgress.size() == 1 && !clients.isEmpty()) lock.notify();
+        }
+    }
+
+    private void wakeUp() {
+        synchronized (lock) { lock.notify(); }
+    }
+
+    // --- GÖNDERİM THREAD'İ ---
+
+    private void sendLoop() {
+        long lastFlush = System.nanoTime() - flushNanos;
+        while (running) {
+            try {
+                List<Object> events = new ArrayList<>();
+                List<Object> progress = new ArrayList<>();
+                List<Object> allProgress;
+                synchronized (lock) {
+                    while (size == 0 && dirtyProgress.isEmpty() && !anyNeedsFullProgress()) lock.wait(1000);
+                    // Frame oranı sınırı: son gönderimden flushMs geçmeden tekrar gönderme
+                    long waitNanos;
+                    while ((waitNanos = lastFlush + flushNanos - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(lock, waitNanos);
+                    }
+
+                    while (size > 0) {
+                        events.add(ring[head]);
+                        ring[head] = null;
+                        head = (head + 1) % ring.length;
+                        size--;
+                    }
+                    for (String hash : dirtyProgress) progress.add(latestProgress.get(hash));
+                    dirtyProgress.clear();
+                    allProgress = new ArrayList<>(latestProgress.values());
+                }
+                lastFlush = System.nanoTime();
+                if (clients.isEmpty()) continue;
+                deliver(events, progress, allProgress);
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Web olay gönderim hatası: " + e.getMessage());
+            }
+        }
+    }
+
+    private boolean anyNeedsFullProgress() {
+        for (Client c : clients.values()) {
+            if (c.needsFullProgress && c.pending.get() < maxPending) return true;
+        }
+        return false;
+    }
+
+    private void deliver(List<Object> events, List<Object> progress, List<Object> allProgress) {
+        String frame = null;
+        String catchUpFrame = null;
+        long now = System.nanoTime();
+
+        for (Client c : clients.values()) {
+            if (!c.ctx.session.isOpen()) {
+                clients.remove(c.ctx);
+                continue;
+            }
+            if (c.pending.get() >= maxPending) {
+                // Yavaş istemci: bu frame'i atla; sıralı olaylar birikir, ilerleme sonra toptan gider
+                skippedFrames.increment();
+                c.needsFullProgress = true;
+                keepBacklog(c, events);
+                if (c.blockedSinceNanos == 0) c.blockedSinceNanos = now;
+                else if (now - c.blockedSinceNanos > stallNanos) drop(c);
+                continue;
+            }
+
+            String payload;
+            if (c.needsFullProgress) {
+                if (!c.backlog.isEmpty()) {
+                    // Birikmiş olaylar istemciye özel: ortak frame kullanılamaz
+                    keepBacklog(c, events);
+                    payload = serialize(catchUp(new ArrayList<>(c.backlog), allProgress));
+                    c.backlog.clear();
+                } else {
+                    if (catchUpFrame == null) catchUpFrame = serialize(catchUp(events, allProgress));
+                    payload = catchUpFrame;
+                }
+                c.needsFullProgress = false;
+            } else {
+                if (events.isEmpty() && progress.isEmpty()) continue;
+                if (frame == null) {
+                    List<Object> all = new ArrayList<>(events);
+                    all.addAll(progress);
+                    frame = serialize(all);
+                }
+                payload = frame;
+            }
+            if (payload != null) send(c, payload);
+        }
+    }
+
+    private void keepBacklog(Client c, List<Object> events) {
+        for (Object event : events) {
+            if (c.backlog.size() == ring.length) {
+                c.backlog.pollFirst();
+                droppedEvents.increment();
+            }
+            c.backlog.addLast(event);
+        }
+    }
+
+    // Sıralı olaylar + tüm indirmelerin güncel durumu
+    private static List<Object> catchUp(List<Object> events, List<Object> allProgress) {
+        List<Object> merged = new ArrayList<>(events);
+        merged.addAll(allProgress);
+        return merged;
+    }
+
+    private String serialize(List<Object> events) {
+        if (events.isEmpty()) return null;
+        Map<String, Object> batch = new LinkedHashMap<>();
+        batch.put("type", "BATCH");
+        batch.put("events", events);
+        try {
+            return json.writeValueAsString(batch);
+        } catch (JsonProcessingException e) {
+            System.err.println("Web olayı serileştirilemedi: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void send(Client c, String payload) {
+        c.pending.incrementAndGet();
+        frames.increment();
+        try {
+            c.ctx.session.getRemote().sendString(payload, new WriteCallback() {
+                @Override public void writeSuccess() {
+                    c.pending.decrementAndGet();
+                    c.blockedSinceNanos = 0;
+                }
+                @Override public void writeFailed(Throwable t) {
+                    c.pending.decrementAndGet();
+                    sendErrors.increment();
+                    clients.remove(c.ctx);
+                }
+            });
+        } catch (RuntimeException e) {
+            c.pending.decrementAndGet();
+            sendErrors.increment();
+            clients.remove(c.ctx);
+        }
+    }
+
+    private void drop(Client c) {
+        clients.remove(c.ctx);
+        droppedClients.increment();
+        System.out.println("🐢 Yavaş web istemcisi kapatıldı: " + c.ctx.session.getRemoteAddress());
+        try {
+            c.ctx.closeSession(1008, "Client too slow");
+        } catch (RuntimeException ignored) {}
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("clients", clients.size());
+        synchronized (lock) {
+            stats.put("queued", size);
+            stats.put("capacity", ring.length);
+            stats.put("trackedProgress", latestProgress.size());
+        }
+        stats.put("published", published.sum());
+        stats.put("progressMerged", progressMerged.sum());
+        stats.put("droppedEvents", droppedEvents.sum());
+        stats.put("frames", frames.sum());
+        stats.put("skippedFrames", skippedFrames.sum());
+        stats.put("droppedClients", droppedClients.sum());
+        stats.put("sendErrors", sendErrors.sum());
+        return stats;
+    }
+}
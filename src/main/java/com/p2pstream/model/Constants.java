@@ -6,11 +6,93 @@ public class Constants {
     public static final int UDP_PORT = 50000;
     public static final int TCP_PORT = 50001;
     public static final int MAX_UDP_PACKET_BYTES = 65000;
+    // UDP handler worker sayısı, öncelik kuyruğu başına kapasite ve kernel alım tamponu
+    public static final int UDP_WORKERS = Integer.parseInt(env("UDP_WORKERS", "4"));
+    public static final int UDP_QUEUE_CAPACITY = Integer.parseInt(env("UDP_QUEUE_CAPACITY", "4096"));
+    public static final int UDP_RECEIVE_BUFFER_BYTES = 4 * 1024 * 1024;
+    // Tekrar eden flood mesajı kontrolü: nesil başına slot sayısı (x8 byte, x2 nesil) ve pencere
+    public static final int SEEN_CACHE_SLOTS = 1 << 16;
+    public static final long SEEN_WINDOW_MS = 60_000;
+    // Peer tablosu: heartbeat aralığı, bu kadar sessiz kalan peer canlı sayılmaz, bu kadar sonra atılır
+    public static final long HEARTBEAT_INTERVAL_MS = 5_000;
+    public static final long PEER_TIMEOUT_MS = 15_000;
+    public static final long PEER_EVICT_MS = 60_000;
+    // Arama yönlendirme özetleri (Bloom): öğe başına bit, hash sayısı, üst sınır (2^18 bit = 32 KB,
+    // tek datagram'a sığar), kaçan delta'ları onarmak için tam özetin yeniden gönderilme aralığı ve
+    // cevapsız kalan FULL isteğinin tekrarlanma aralığı
+    public static final int SUMMARY_BITS_PER_ITEM = 10;
+    public static final int SUMMARY_HASHES = 7;
+    public static final int SUMMARY_MAX_LOG2_BITS = 18;
+    public static final long SUMMARY_FULL_MS = 300_000;
+    public static final long SUMMARY_RESYNC_MS = 10_000;
+    // Cevap tarafı sorgu önbelleği (LRU kayıt sayısı, TTL) ve istek tarafında aynı aramanın
+    // tekrar ağa gönderilmeyip devam edene ortak olduğu süre; arama sonucundaki bir sahibin
+    // (indirme kaynağı) son ilanından sonra geçerli kaldığı süre
+    public static final int QUERY_CACHE_ENTRIES = 256;
+    public static final long QUERY_CACHE_TTL_MS = 10_000;
+    public static final long SEARCH_COALESCE_MS = 5_000;
+    public static final long SEARCH_OWNER_TTL_MS = 600_000;
+    // Subnet broadcast adresleri bu sürede bir yeniden hesaplanır
+    public static final long BROADCAST_REFRESH_MS = 30_000;
 
     // Klasörler
     public static final String SHARED_FOLDER = "/app/shared_videos";
     public static final String BUFFER_FOLDER = "/app/buffer";
+    // Kalıcı dosya hash index'i (paylaşılan klasörün dışında, kendisi paylaşılmasın)
+    public static final String INDEX_FILE = BUFFER_FOLDER + "/library.idx";
+
+    // Açılış taramasında aynı anda hash'lenen dosya sayısı
+    public static final int HASH_THREADS = Integer.parseInt(env("HASH_THREADS",
+            String.valueOf(Math.max(1, Runtime.getRuntime().availableProcessors()))));
+
+    // Klasör izleyicisi: bir dosyaya son olaydan bu kadar sonra dokunulur (kopyalama bitsin)
+    public static final long WATCH_DEBOUNCE_MS = 500;
+
+    // Dosya adı araması: "trigram" = ters index, "linear" = her sorguda tüm dosyaları tara
+    public static final String SEARCH_ENGINE = env("SEARCH_ENGINE", "trigram");
+
+    // Web arayüzü olay yolu: tampon kapasitesi, frame aralığı, istemci başına bitmemiş frame
+    // sınırı (aşılınca frame atlanır) ve hiç ilerlemeyen istemcinin kapatılma süresi
+    public static final int WEB_EVENT_BUFFER = 4096;
+    public static final long WEB_EVENT_FLUSH_MS = Long.parseLong(env("WEB_EVENT_FLUSH_MS", "100"));
+    public static final int WEB_CLIENT_MAX_PENDING = 16;
+    public static final long WEB_CLIENT_STALL_MS = 10_000;
 
     // --- PDF GEREKSİNİMİ: 256 KB CHUNK SIZE ---
     public static final int CHUNK_SIZE = 256 * 1024; // 256 KB
-}
\ No newline at end of file
+
+    // --- TCP CHUNK SERVER ---
+    // "nio" = Selector tabanlı event-loop sunucu, "thread" = eski bağlantı başına thread
+    public static final String TCP_SERVER_MODE = env("TCP_SERVER_MODE", "nio");
+    public static final int TCP_EVENT_LOOPS = Integer.parseInt(env("TCP_EVENT_LOOPS",
+            String.valueOf(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors())))));
+    public static final int TCP_MAX_CONNECTIONS = Integer.parseInt(env("TCP_MAX_CONNECTIONS", "512"));
+    // Bağlantı başına cevabı beklenmeden gönderilen chunk isteği sayısı
+    public static final int PIPELINE_DEPTH = Integer.parseInt(env("PIPELINE_DEPTH", "4"));
+    // Eksik chunk sayısı bu eşiğin altına inince kalanlar birden fazla peer'dan istenir
+    public static final int ENDGAME_CHUNKS = Integer.parseInt(env("ENDGAME_CHUNKS", "16"));
+    public static final int MAX_PEER_RECONNECTS = 3;
+    // Bu kadar bozuk chunk gönderen peer indirmeden çıkarılır
+    public static final int MAX_BAD_CHUNKS_PER_PEER = 3;
+    // Resume journal'ı (.parts) bu kadar chunk'ta veya bu kadar sürede bir fsync edilir
+    public static final int JOURNAL_FLUSH_CHUNKS = 16;
+    public static final long JOURNAL_FLUSH_MS = 2000;
+    // Oynatma noktasından itibaren öncelikli indirilen chunk sayısı (8 x 256 KB = 2 MB)
+    public static final int READ_AHEAD_CHUNKS = Integer.parseInt(env("READ_AHEAD_CHUNKS", "8"));
+    // /api/watch: henüz inmemiş chunk'ı bekleyen okuyucu en fazla bu kadar bekler, sonra istek kesilir
+    public static final long WATCH_CHUNK_TIMEOUT_MS = 30_000;
+    // >1 ise inen chunk'lar ayrı bir yazıcı thread'inde bu kadarlık ardışık dizilere birleştirilip
+    // tek gathering write ile yazılır (HDD/ağ diski için); 0/1 = her chunk doğrudan konumsal yazılır
+    public static final int WRITE_COALESCE_CHUNKS = Integer.parseInt(env("WRITE_COALESCE_CHUNKS", "0"));
+    // Komşusu gelmeyen chunk birleştiricide en fazla bu kadar bekler
+    public static final long WRITE_COALESCE_DELAY_MS = 20;
+    // Havuzda tutulan en fazla CHUNK_SIZE'lık direct buffer (64 x 256 KB = 16 MB)
+    public static final int BUFFER_POOL_MAX = 64;
+    // true ise sızan (release edilmeden GC'ye giden) buffer'ın alındığı yer de loglanır; acquire başına stack trace maliyeti var
+    public static final boolean BUFFER_POOL_LEAK_TRACE = Boolean.parseBoolean(env("BUFFER_POOL_LEAK_TRACE", "false"));
+
+    private static String env(String key, String fallback) {
+        String value = System.getenv(key);
+        return (value == null || value.isBlank()) ? fallback : value.trim();
+    }
+}
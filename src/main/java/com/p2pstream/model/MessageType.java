@@ -5,5 +5,9 @@ public enum MessageType {
     DISCOVER,
     DISCOVER_REPLY,
     SEARCH,
-    SEARCH_REPLY
+    SEARCH_REPLY,
+    // Yeni tipler sona eklenir: ordinal'ler kablo formatının parçası
+    HEARTBEAT,
+    HEARTBEAT_ACK,
+    SUMMARY
 }
@@ -1,27 +1,50 @@
 package com.p2pstream.model;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.time.Instant;
 import java.util.Objects;
-//bu dosya kullanılmıyor çünkü
-//!! SADECE IP GEREKTIĞI ICIN KULLANMADIM MYUDPHANDLER DA
+
+// PeerTable'daki bir komşu: adres (sayısal, ad çözümlemesi yok), son görülme, heartbeat RTT'si
 public final class PeerInfo {
     private final String peerId;
     private final String ip;
     private final int udpPort;
+    private final InetSocketAddress address;
     private volatile Instant lastSeen;
+    private volatile long lastSeenNanos;
+
+    // Heartbeat RTT (ms), TCP'deki gibi 1/8 ağırlıklı hareketli ortalama; ölçülmediyse -1
+    private volatile double rttMillis = -1;
+    private volatile long lastRttNanos = 0;
 
-    public PeerInfo(String peerId, String ip, int udpPort) {
+    public PeerInfo(String peerId, InetAddress address, int udpPort) {
         this.peerId = peerId;
-        this.ip = ip;
+        this.ip = address.getHostAddress();
         this.udpPort = udpPort;
-        this.lastSeen = Instant.now();
+        this.address = new InetSocketAddress(address, udpPort);
+        touch();
     }
 
     public String getPeerId() { return peerId; }
     public String getIp() { return ip; }
     public int getUdpPort() { return udpPort; }
+    public InetSocketAddress getAddress() { return address; }
     public Instant getLastSeen() { return lastSeen; }
-    public void touch() { this.lastSeen = Instant.now(); }
+    public long getLastSeenNanos() { return lastSeenNanos; }
+    public double getRttMillis() { return rttMillis; }
+    public long getLastRttNanos() { return lastRttNanos; }
+
+    public void touch() {
+        this.lastSeen = Instant.now();
+        this.lastSeenNanos = System.nanoTime();
+    }
+
+    public synchronized void recordRtt(long rttNanos) {
+        double sample = rttNanos / 1_000_000.0;
+        rttMillis = rttMillis < 0 ? sample : rttMillis + (sample - rttMillis) / 8;
+        lastRttNanos = rttNanos;
+    }
 
     @Override public boolean equals(Object o) {
         if (this == o) return true;
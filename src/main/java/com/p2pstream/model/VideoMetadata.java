@@ -8,21 +8,32 @@ public final class VideoMetadata implements Serializable {
     private final String fileName;
     private final long fileSize;
     private final int totalChunks; // Toplam parça sayısı (256KB'lık)
+    private final String merkleRoot; // Chunk hash'leri üzerindeki Merkle kökü (Hex), bilinmiyorsa null
+    private final byte[] chunkHashes; // Chunk başına 32 byte SHA-256, art arda; sadece yerel dosyalarda dolu
 
     public VideoMetadata(String fileHash, String fileName, long fileSize, int totalChunks) {
+        this(fileHash, fileName, fileSize, totalChunks, null, null);
+    }
+
+    public VideoMetadata(String fileHash, String fileName, long fileSize, int totalChunks,
+                         String merkleRoot, byte[] chunkHashes) {
         this.fileHash = Objects.requireNonNull(fileHash);
         this.fileName = Objects.requireNonNull(fileName);
         this.fileSize = fileSize;
         this.totalChunks = totalChunks;
+        this.merkleRoot = merkleRoot;
+        this.chunkHashes = chunkHashes;
     }
 
     public String getFileHash() { return fileHash; }
     public String getFileName() { return fileName; }
     public long getFileSize() { return fileSize; }
     public int getTotalChunks() { return totalChunks; }
+    public String getMerkleRoot() { return merkleRoot; }
+    public byte[] getChunkHashes() { return chunkHashes; }
 
     @Override
     public String toString() {
         return fileName + " [" + fileSize + " bytes] Hash:" + fileHash.substring(0, 8) + "...";
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,102 @@
+package com.p2pstream.net.tcp;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bir indirmenin diskte hazır olan chunk'ları ve onları bekleyen okuyucular (/api/watch).
+ * Chunk başına bir future tutulur; ParallelDownloader chunk'ı yazınca future tamamlanır ve
+ * bekleyen okuyucu hemen uyanır (polling yok). İndirme biterse tüm bekleyenler serbest kalır,
+ * yarıda kalırsa hata ile sonlanır.
+ */
+public final class ChunkAvailability {
+
+    private final String fileName;
+    private final BitSet available = new BitSet();
+    private final Map<Integer, Waiter> waiters = new HashMap<>();
+    private boolean finished = false;
+    private IOException failure;
+
+    // Bir chunk'ın ortak future'ı ve onu bekleyen okuyucu (kopya) sayısı
+    private static final class Waiter {
+        final CompletableFuture<Void> ready = new CompletableFuture<>();
+        int readers = 0;
+    }
+
+    public ChunkAvailability(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public String getFileName() { return fileName; }
+
+    public synchronized boolean isAvailable(int chunkIndex) {
+        return finished || available.get(chunkIndex);
+    }
+
+    /** Chunk diske yazıldı: bekleyen okuyucular uyanır. */
+    public void markAvailable(int chunkIndex) {
+        Waiter waiter;
+        synchronized (this) {
+            available.set(chunkIndex);
+            waiter = waiters.remove(chunkIndex);
+        }
+        if (waiter != null) waiter.ready.complete(null);
+    }
+
+    /** Journal'dan devam edilirken önceden inmiş chunk'lar. */
+    public void markAvailable(BitSet chunks) {
+        for (int i = chunks.nextSetBit(0); i >= 0; i = chunks.nextSetBit(i + 1)) markAvailable(i);
+    }
+
+    /** İndirme tamamlandı: tüm chunk'lar hazır, bekleyen herkes uyanır. */
+    public void finish() {
+        for (CompletableFuture<Void> waiter : drain(null)) waiter.complete(null);
+    }
+
+    /** İndirme yarıda kaldı: bekleyenler hata alır (boş byte servis etmek yerine). */
+    public void abort(String reason) {
+        IOException e = new IOException(fileName + ": " + reason);
+        for (CompletableFuture<Void> waiter : drain(e)) waiter.completeExceptionally(e);
+    }
+
+    private synchronized List<CompletableFuture<Void>> drain(IOException e) {
+        if (e == null) finished = true;
+        else failure = e;
+        List<CompletableFuture<Void>> all = new ArrayList<>();
+        for (Waiter w : waiters.values()) all.add(w.ready);
+        waiters.clear();
+        return all;
+    }
+
+    /**
+     * Chunk hazır olunca tamamlanan future. Her çağırana ayrı bir kopya döner: bir okuyucunun
+     * iptali (istemci gitti) aynı chunk'ı bekleyen diğer okuyucuları etkilemez. İptal edilen veya
+     * zaman aşımına uğrayan kopya bekleyenlerden düşer; son okuyucu gidince chunk'ın kaydı silinir.
+     */
+    public CompletableFuture<Void> whenAvailable(int chunkIndex) {
+        synchronized (this) {
+            if (finished || available.get(chunkIndex)) return CompletableFuture.completedFuture(null);
+            if (failure != null) return CompletableFuture.failedFuture(failure);
+            Waiter waiter = waiters.computeIfAbsent(chunkIndex, k -> new Waiter());
+            waiter.readers++;
+            CompletableFuture<Void> copy = waiter.ready.copy();
+            copy.whenComplete((v, e) -> {
+                if (e != null) leave(chunkIndex, waiter);
+            });
+            return copy;
+        }
+    }
+
+    private synchronized void leave(int chunkIndex, Waiter waiter) {
+        if (waiters.get(chunkIndex) == waiter && --waiter.readers == 0) waiters.remove(chunkIndex);
+    }
+
+    public synchronized int waitingChunks() {
+        return waiters.size();
+    }
+}
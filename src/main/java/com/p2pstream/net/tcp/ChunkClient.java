@@ -0,0 +1,77 @@
+package com.p2pstream.net.tcp;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Binary chunk protokolünü konuşan, pipelining destekli istemci bağlantısı.
+ * request() cevap beklemeden döner; cevaplar gönderim sırasıyla readResponse() ile okunur.
+ * Bloklanmış bir okumayı iptal etmek için başka bir thread'den close() çağrılabilir.
+ */
+public final class ChunkClient implements Closeable {
+
+    private static final int CONNECT_TIMEOUT_MS = 5000;
+
+    private final SocketChannel channel;
+    private final ByteBuffer header = ByteBuffer.allocate(ChunkProtocol.RESPONSE_HEADER_BYTES);
+    private int nextRequestId = 1;
+
+    public ChunkClient(String ip, int port) throws IOException {
+        this.channel = SocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.socket().connect(new InetSocketAddress(ip, port), CONNECT_TIMEOUT_MS);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /** İsteği gönderir ve eşleştirme için kullanılacak requestId'yi döner. */
+    public int request(String fileName, int chunkIndex) throws IOException {
+        int requestId = nextRequestId++;
+        ByteBuffer frame = ByteBuffer.wrap(ChunkProtocol.encodeRequest(requestId, chunkIndex, fileName));
+        while (frame.hasRemaining()) channel.write(frame);
+        return requestId;
+    }
+
+    /**
+     * Bir sonraki cevabı okur. Payload, payload tamponunun başına yazılır ve tampon
+     * okumaya hazır (flip edilmiş) halde bırakılır.
+     */
+    public ChunkProtocol.Response readResponse(ByteBuffer payload) throws IOException {
+        header.clear();
+        readFully(header);
+        header.flip();
+        ChunkProtocol.Response response = ChunkProtocol.decodeResponse(header);
+
+        if (response.payloadLength > payload.capacity()) {
+            throw new IOException("Payload too large: " + response.payloadLength);
+        }
+        payload.clear();
+        payload.limit(response.payloadLength);
+        readFully(payload);
+        payload.flip();
+        return response;
+    }
+
+    private void readFully(ByteBuffer dst) throws IOException {
+        while (dst.hasRemaining()) {
+            if (channel.read(dst) < 0) throw new EOFException("Connection closed by peer");
+        }
+    }
+
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public void close() {
+        try { channel.close(); } catch (IOException e) {}
+    }
+}
@@ -0,0 +1,183 @@
+package com.p2pstream.net.tcp;
+
+import com.p2pstream.model.Constants;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * BUFFER_FOLDER içinde, indirilen dosyanın yanında duran "<dosya>.parts" bitfield dosyası.
+ * Tamamlanan chunk'lar toplu halde yazılır ve fsync edilir; süreç yeniden başlarsa
+ * indirme sadece eksik chunk'larla devam eder.
+ *
+ * Format: [MAGIC:4][VERSION:2][totalSize:8][totalChunks:4][fileHash:UTF][fileName:UTF]
+ *         [merkleRoot:UTF][peerCount:2][peer:UTF]...[bitfield][CRC32:8]
+ */
+public final class ChunkJournal implements Closeable {
+
+    public static final String SUFFIX = ".parts";
+
+    private static final int MAGIC = 0x50325050; // "P2PP"
+    private static final short VERSION = 1;
+
+    private final File journalFile;
+    private final File dataFile;
+    private final String fileName;
+    private final String fileHash;
+    private final long totalSize;
+    private final int totalChunks;
+    private final String merkleRoot;
+    private final List<String> peers;
+    private final BitSet completed;
+
+    private int dirtyChunks = 0;
+    private long lastFlush = System.currentTimeMillis();
+
+    private ChunkJournal(File dataFile, String fileName, String fileHash, long totalSize, int totalChunks,
+                         String merkleRoot, List<String> peers, BitSet completed) {
+        this.dataFile = dataFile;
+        this.journalFile = new File(dataFile.getPath() + SUFFIX);
+        this.fileName = fileName;
+        this.fileHash = fileHash;
+        this.totalSize = totalSize;
+        this.totalChunks = totalChunks;
+        this.merkleRoot = merkleRoot;
+        this.peers = new ArrayList<>(peers);
+        this.completed = completed;
+    }
+
+    /**
+     * Aynı dosya (hash + boyut) için geçerli bir journal varsa onu, yoksa boş bir journal döner.
+     * Buffer dosyası kaybolmuşsa eski bitfield'e güvenilmez.
+     */
+    public static ChunkJournal openOrCreate(File dataFile, String fileName, String fileHash, long totalSize,
+                                            int totalChunks, String merkleRoot, List<String> peers) {
+        ChunkJournal existing = load(new File(dataFile.getPath() + SUFFIX));
+        if (existing != null && dataFile.isFile() && dataFile.length() == totalSize
+                && existing.totalSize == totalSize && existing.fileHash.equalsIgnoreCase(fileHash)) {
+            existing.peers.removeAll(peers);
+            existing.peers.addAll(0, peers);
+            return existing;
+        }
+        return new ChunkJournal(dataFile, fileName, fileHash, totalSize, totalChunks, merkleRoot, peers, new BitSet(totalChunks));
+    }
+
+    /** Journal dosyasını okur; bozuk veya uyumsuz ise null döner. */
+    public static ChunkJournal load(File journalFile) {
+        if (!journalFile.isFile()) return null;
+        try {
+            byte[] bytes = Files.readAllBytes(journalFile.toPath());
+            if (bytes.length < 8) return null;
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 8);
+            if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) return null;
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+            if (in.readInt() != MAGIC || in.readShort() != VERSION) return null;
+
+            long totalSize = in.readLong();
+            int totalChunks = in.readInt();
+            String fileHash = in.readUTF();
+            String fileName = in.readUTF();
+            String merkleRoot = in.readUTF();
+            int peerCount = in.readUnsignedShort();
+            List<String> peers = new ArrayList<>();
+            for (int i = 0; i < peerCount; i++) peers.add(in.readUTF());
+
+            byte[] bits = new byte[(totalChunks + 7) / 8];
+            in.readFully(bits);
+
+            String dataPath = journalFile.getPath().substring(0, journalFile.getPath().length() - SUFFIX.length());
+            return new ChunkJournal(new File(dataPath), fileName, fileHash, totalSize, totalChunks,
+                    merkleRoot.isEmpty() ? null : merkleRoot, peers, BitSet.valueOf(bits));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // --- GÜNCELLEME ---
+
+    /** Chunk diske yazıldıktan sonra çağrılır; belirli sayıda chunk veya süre birikince flush edilir. */
+    public synchronized void markDone(int chunk) throws IOException {
+        if (completed.get(chunk)) return;
+        completed.set(chunk);
+        dirtyChunks++;
+        if (dirtyChunks >= Constants.JOURNAL_FLUSH_CHUNKS
+                || System.currentTimeMillis() - lastFlush >= Constants.JOURNAL_FLUSH_MS) {
+            flush();
+        }
+    }
+
+    /**
+     * Önce veri dosyası, sonra journal fsync edilir: journal diskte olmayan bir chunk'ı
+     * asla "tamam" göstermez.
+     */
+    public synchronized void flush() throws IOException {
+        if (dataFile.isFile()) {
+            try (FileChannel data = FileChannel.open(dataFile.toPath(), StandardOpenOption.WRITE)) {
+                data.force(false);
+            }
+        }
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bos);
+        out.writeInt(MAGIC);
+        out.writeShort(VERSION);
+        out.writeLong(totalSize);
+        out.writeInt(totalChunks);
+        out.writeUTF(fileHash);
+        out.writeUTF(fileName);
+        out.writeUTF(merkleRoot == null ? "" : merkleRoot);
+        out.writeShort(peers.size());
+        for (String peer : peers) out.writeUTF(peer);
+        out.write(Arrays.copyOf(completed.toByteArray(), (totalChunks + 7) / 8));
+
+        CRC32 crc = new CRC32();
+        crc.update(bos.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+
+        // Yerinde yazım yarıda kalırsa CRC tutmaz ve tüm ilerleme kaybolur: geçici dosya + atomik rename
+        Path tmp = journalFile.toPath().resolveSibling(journalFile.getName() + ".tmp");
+        try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buf = ByteBuffer.wrap(bos.toByteArray());
+            while (buf.hasRemaining()) ch.write(buf);
+            ch.force(true);
+        }
+        Files.move(tmp, journalFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        dirtyChunks = 0;
+        lastFlush = System.currentTimeMillis();
+    }
+
+    /** İndirme tamamlandı; yan dosyaya artık gerek yok. */
+    public synchronized void delete() {
+        journalFile.delete();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (dirtyChunks > 0) flush();
+    }
+
+    // --- GETTER'LAR ---
+
+    public synchronized BitSet completed() { return (BitSet) completed.clone(); }
+    public String getFileName() { return fileName; }
+    public String getFileHash() { return fileHash; }
+    public long getTotalSize() { return totalSize; }
+    public String getMerkleRoot() { return merkleRoot; }
+    public List<String> getPeers() { return new ArrayList<>(peers); }
+    public File getDataFile() { return dataFile; }
+}
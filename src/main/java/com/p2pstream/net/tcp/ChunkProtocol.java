@@ -0,0 +1,115 @@
+package com.p2pstream.net.tcp;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary chunk protokolü (v1).
+ *
+ * İstek:  [MAGIC:1][VERSION:1][requestId:4][chunkIndex:4][nameLen:2][name:UTF-8]
+ * Cevap:  [MAGIC:1][VERSION:1][status:1][requestId:4][chunkIndex:4][payloadLen:4][payload]
+ *
+ * MAGIC (0xFE) geçerli bir UTF-8 byte'ı olmadığı için sunucu aynı bağlantıda
+ * eski "fileName:chunkIndex" satırlarını binary frame'lerden ayırt edebilir.
+ * chunkIndex = CHUNK_INDEX_HASHES ise payload, dosyanın chunk hash listesidir
+ * (chunk başına 32 byte SHA-256, Merkle ağacının yaprakları).
+ * İstemci cevap beklemeden birden fazla istek gönderebilir (pipelining);
+ * cevaplar requestId ile eşleştirilir.
+ */
+public final class ChunkProtocol {
+    private ChunkProtocol() {}
+
+    public static final byte MAGIC = (byte) 0xFE;
+    public static final byte VERSION = 1;
+
+    public static final int REQUEST_HEADER_BYTES = 12;
+    public static final int RESPONSE_HEADER_BYTES = 15;
+    public static final int MAX_NAME_BYTES = 1024;
+    public static final int CHUNK_INDEX_HASHES = -1;
+
+    // --- STATUS KODLARI ---
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_NOT_FOUND = 1;
+    public static final byte STATUS_OUT_OF_RANGE = 2;
+    public static final byte STATUS_BAD_REQUEST = 3;
+    public static final byte STATUS_UNSUPPORTED_VERSION = 4;
+
+    public static final class Request {
+        public final byte version;
+        public final int requestId;
+        public final int chunkIndex;
+        public final String fileName;
+
+        public Request(byte version, int requestId, int chunkIndex, String fileName) {
+            this.version = version;
+            this.requestId = requestId;
+            this.chunkIndex = chunkIndex;
+            this.fileName = fileName;
+        }
+    }
+
+    public static final class Response {
+        public final byte status;
+        public final int requestId;
+        public final int chunkIndex;
+        public final int payloadLength;
+
+        public Response(byte status, int requestId, int chunkIndex, int payloadLength) {
+            this.status = status;
+            this.requestId = requestId;
+            this.chunkIndex = chunkIndex;
+            this.payloadLength = payloadLength;
+        }
+    }
+
+    public static byte[] encodeRequest(int requestId, int chunkIndex, String fileName) {
+        byte[] name = fileName.getBytes(StandardCharsets.UTF_8);
+        if (name.length > MAX_NAME_BYTES) throw new IllegalArgumentException("File name too long: " + fileName);
+
+        ByteBuffer buf = ByteBuffer.allocate(REQUEST_HEADER_BYTES + name.length);
+        buf.put(MAGIC).put(VERSION).putInt(requestId).putInt(chunkIndex).putShort((short) name.length).put(name);
+        return buf.array();
+    }
+
+    /**
+     * Tampondaki bir sonraki isteği okur. Frame henüz tamamlanmadıysa null döner
+     * ve tamponun pozisyonuna dokunmaz (kısmi okuma).
+     */
+    public static Request decodeRequest(ByteBuffer buf) throws IOException {
+        if (buf.remaining() < REQUEST_HEADER_BYTES) return null;
+
+        int start = buf.position();
+        if (buf.get(start) != MAGIC) throw new IOException("Bad magic");
+
+        int nameLen = buf.getShort(start + 10) & 0xFFFF;
+        if (nameLen > MAX_NAME_BYTES) throw new IOException("Invalid nameLen=" + nameLen);
+        if (buf.remaining() < REQUEST_HEADER_BYTES + nameLen) return null;
+
+        buf.get(); // magic
+        byte version = buf.get();
+        int requestId = buf.getInt();
+        int chunkIndex = buf.getInt();
+        buf.getShort();
+        byte[] name = new byte[nameLen];
+        buf.get(name);
+        return new Request(version, requestId, chunkIndex, new String(name, StandardCharsets.UTF_8));
+    }
+
+    public static void encodeResponse(ByteBuffer dst, byte status, int requestId, int chunkIndex, int payloadLength) {
+        dst.put(MAGIC).put(VERSION).put(status).putInt(requestId).putInt(chunkIndex).putInt(payloadLength);
+    }
+
+    public static Response decodeResponse(ByteBuffer buf) throws IOException {
+        if (buf.get() != MAGIC) throw new IOException("Bad magic");
+        byte version = buf.get();
+        if (version != VERSION) throw new IOException("Unsupported version=" + version);
+
+        byte status = buf.get();
+        int requestId = buf.getInt();
+        int chunkIndex = buf.getInt();
+        int payloadLength = buf.getInt();
+        if (payloadLength < 0) throw new IOException("Invalid payloadLen=" + payloadLength);
+        return new Response(status, requestId, chunkIndex, payloadLength);
+    }
+}
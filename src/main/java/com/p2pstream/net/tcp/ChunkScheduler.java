@@ -0,0 +1,238 @@
+package com.p2pstream.net.tcp;
+
+import java.util.*;
+
+/**
+ * İndirme başına paylaşılan chunk havuzu.
+ * Peer worker'ları işleri bittikçe next() ile yeni chunk çeker; hızlı peer daha çok chunk alır.
+ *
+ * - Sıra: bekleyen chunk'lar küçük index'ten başlayarak verilir (oynatma sırasına yakın).
+ *   Rarest-first yok: chunk'lar sadece paylaşılan klasörden, yani tam dosyaya sahip peer'lardan
+ *   servis ediliyor; her chunk her peer'da var.
+ * - Oynatma önceliği: /api/watch'tan gelen oynatma noktası (playhead) ve read-ahead penceresi
+ *   içindeki chunk'lar her şeyden önce verilir; dosyanın geri kalanı arkada dolmaya devam eder.
+ * - Endgame: dağıtılmamış chunk kalmadığında ve eksik sayısı ENDGAME eşiğinin altındaysa,
+ *   başka peer'lardan beklenen chunk'lar boştaki peer'lara da istenir; ilk gelen kazanır.
+ */
+public class ChunkScheduler {
+
+    /** Tüm chunk'lar bitti veya bu peer'ın yapabileceği iş kalmadı. */
+    public static final int DONE = -1;
+    /** Şu an verilecek chunk yok; başka peer'ların sonucunu bekle. */
+    public static final int WAIT = -2;
+
+    private final int totalChunks;
+    private final int endgameThreshold;
+
+    private final BitSet done = new BitSet();
+    private final BitSet pending = new BitSet(); // kimseye verilmemiş chunk'lar
+    private final BitSet queued = new BitSet(); // inmiş, diske yazılmayı bekliyor (yazma birleştirici)
+    private final Map<Integer, Set<String>> inFlight = new HashMap<>();
+    private final Map<Integer, Set<String>> excluded = new HashMap<>();
+
+    private final Set<String> activePeers = new LinkedHashSet<>();
+
+    private boolean endgameLogged = false;
+
+    // Oynatma penceresi [playheadChunk, playheadChunk + readAheadChunks)
+    private int playheadChunk = -1;
+    private int readAheadChunks = 0;
+
+    public ChunkScheduler(int totalChunks, Collection<String> peers, int endgameThreshold) {
+        this.totalChunks = totalChunks;
+        this.endgameThreshold = endgameThreshold;
+        this.activePeers.addAll(peers);
+        this.pending.set(0, totalChunks);
+    }
+
+    // --- ATAMA ---
+
+    public synchronized int next(String peer) {
+        if (isComplete()) return DONE;
+        if (!activePeers.contains(peer)) return DONE;
+
+        int chunk = pickPending(peer);
+        if (chunk >= 0) {
+            pending.clear(chunk);
+            inFlight.computeIfAbsent(chunk, k -> new HashSet<>()).add(peer);
+            return chunk;
+        }
+
+        if (isEndgame()) {
+            chunk = pickEndgame(peer);
+            if (chunk >= 0) {
+                if (!endgameLogged) {
+                    endgameLogged = true;
+                    System.out.println("🏁 ENDGAME: son " + remaining() + " chunk birden fazla peer'dan isteniyor");
+                }
+                inFlight.get(chunk).add(peer);
+                return chunk;
+            }
+        }
+
+        // Uçuşta hiçbir şey yoksa ve bu peer'a uygun bekleyen iş de yoksa bir daha iş çıkmaz
+        // Yazma kuyruğundaki chunk diske yazılamazsa tekrar havuza döner: o zamana kadar bekle
+        return inFlight.isEmpty() && queued.isEmpty() ? DONE : WAIT;
+    }
+
+    private int pickPending(String peer) {
+        if (playheadChunk >= 0) {
+            int end = Math.min(totalChunks, playheadChunk + readAheadChunks);
+            for (int i = playheadChunk; i < end; i++) {
+                if (pending.get(i) && isEligible(peer, i)) return i;
+            }
+        }
+        for (int i = pending.nextSetBit(0); i >= 0; i = pending.nextSetBit(i + 1)) {
+            if (isEligible(peer, i)) return i;
+        }
+        return -1;
+    }
+
+    private int pickEndgame(String peer) {
+        int best = -1;
+        int bestRequesters = Integer.MAX_VALUE;
+        for (Map.Entry<Integer, Set<String>> e : inFlight.entrySet()) {
+            int chunk = e.getKey();
+            if (e.getValue().contains(peer) || !isEligible(peer, chunk)) continue;
+            // En az peer'dan beklenen chunk'ı tercih et
+            if (e.getValue().size() < bestRequesters) {
+                best = chunk;
+                bestRequesters = e.getValue().size();
+            }
+        }
+        return best;
+    }
+
+    private boolean isEndgame() {
+        return pending.isEmpty() && remaining() <= endgameThreshold;
+    }
+
+    private boolean isEligible(String peer, int chunk) {
+        Set<String> ex = excluded.get(chunk);
+        return ex == null || !ex.contains(peer);
+    }
+
+    /** Oynatıcının okuduğu/atladığı chunk; pencere içindekiler bir sonraki next() çağrılarında önce verilir. */
+    public synchronized void setPlayhead(int chunk, int readAhead) {
+        if (chunk < 0 || chunk >= totalChunks) return;
+        this.playheadChunk = chunk;
+        this.readAheadChunks = Math.max(1, readAhead);
+        notifyAll();
+    }
+
+    // --- SONUÇLAR ---
+
+    /** @return chunk ilk kez tamamlandıysa true; endgame'de geç gelen kopyalar için false. */
+    public synchronized boolean complete(int chunk, String peer) {
+        if (done.get(chunk)) {
+            releaseInFlight(chunk, peer);
+            return false;
+        }
+        done.set(chunk);
+        inFlight.remove(chunk);
+        excluded.remove(chunk);
+        notifyAll();
+        return true;
+    }
+
+    /** Önceki oturumda diske yazılmış (journal'dan okunan) chunk'lar havuzdan düşülür. */
+    public synchronized void markCompleted(BitSet chunks) {
+        for (int i = chunks.nextSetBit(0); i >= 0 && i < totalChunks; i = chunks.nextSetBit(i + 1)) {
+            if (done.get(i)) continue;
+            pending.clear(i);
+            done.set(i);
+        }
+        notifyAll();
+    }
+
+    /**
+     * Chunk indi ama diske ayrı bir yazıcı yazacak: uçuştan çıkar, henüz tamamlanmış sayılmaz.
+     * @return yazma sahipliği alındıysa true; chunk zaten yazılmış/kuyruktaysa (endgame kopyası) false.
+     */
+    public synchronized boolean queueForWrite(int chunk, String peer) {
+        if (done.get(chunk) || queued.get(chunk)) {
+            releaseInFlight(chunk, peer);
+            return false;
+        }
+        queued.set(chunk);
+        inFlight.remove(chunk);
+        excluded.remove(chunk);
+        notifyAll();
+        return true;
+    }
+
+    /** queueForWrite ile alınan chunk diske yazıldı. */
+    public synchronized void writeDone(int chunk) {
+        if (!queued.get(chunk)) return;
+        queued.clear(chunk);
+        done.set(chunk);
+        notifyAll();
+    }
+
+    /** queueForWrite ile alınan chunk diske yazılamadı: havuza geri döner ve yeniden indirilir. */
+    public synchronized void writeFailed(int chunk) {
+        if (!queued.get(chunk)) return;
+        queued.clear(chunk);
+        pending.set(chunk);
+        notifyAll();
+    }
+
+    /** Peer chunk'ı veremedi (hata kodu/bozuk veri): bu chunk bu peer'dan bir daha istenmez. */
+    public synchronized void reject(int chunk, String peer) {
+        excluded.computeIfAbsent(chunk, k -> new HashSet<>()).add(peer);
+        release(chunk, peer);
+    }
+
+    /** Bağlantı koptu: chunk peer cezalandırılmadan havuza geri döner. */
+    public synchronized void release(int chunk, String peer) {
+        if (!done.get(chunk)) releaseInFlight(chunk, peer);
+        notifyAll();
+    }
+
+    private void releaseInFlight(int chunk, String peer) {
+        Set<String> requesters = inFlight.get(chunk);
+        if (requesters == null) return;
+        requesters.remove(peer);
+        if (requesters.isEmpty()) {
+            inFlight.remove(chunk);
+            if (!done.get(chunk)) pending.set(chunk);
+        }
+    }
+
+    // --- PEER YÖNETİMİ ---
+
+    public synchronized void removePeer(String peer) {
+        if (!activePeers.remove(peer)) return;
+        for (Integer chunk : new ArrayList<>(inFlight.keySet())) {
+            if (inFlight.get(chunk).contains(peer)) releaseInFlight(chunk, peer);
+        }
+        notifyAll();
+    }
+
+    public synchronized boolean isPeerActive(String peer) {
+        return activePeers.contains(peer);
+    }
+
+    // --- BEKLEME & DURUM ---
+
+    /** Bir chunk tamamlanana/serbest kalana kadar (en fazla timeoutMs) bekler. */
+    public synchronized void awaitChange(long timeoutMs) throws InterruptedException {
+        if (!isComplete()) wait(timeoutMs);
+    }
+
+    public synchronized boolean isComplete() {
+        return done.cardinality() == totalChunks;
+    }
+
+    public synchronized boolean isDone(int chunk) {
+        return done.get(chunk);
+    }
+
+    public synchronized int completedCount() {
+        return done.cardinality();
+    }
+
+    public synchronized int remaining() {
+        return totalChunks - done.cardinality();
+    }
+}
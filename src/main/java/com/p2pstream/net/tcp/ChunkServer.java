@@ -0,0 +1,12 @@
+package com.p2pstream.net.tcp;
+
+/**
+ * Chunk dosya sunucusu. Eski thread-per-connection sunucu (TcpServer) ve
+ * Selector tabanlı sunucu (NioChunkServer) aynı arayüzü paylaşır.
+ */
+public interface ChunkServer {
+    void start();
+
+    /** Şu anda açık tutulan TCP bağlantı sayısı. */
+    int getOpenConnections();
+}
@@ -0,0 +1,182 @@
+package com.p2pstream.net.tcp;
+
+import com.p2pstream.model.Constants;
+import com.p2pstream.service.ChunkBufferPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * İsteğe bağlı yazma birleştirme aşaması (WRITE_COALESCE_CHUNKS > 1). Worker'lar doğrulanmış
+ * chunk'ı havuzdan alınan bir buffer'a kopyalayıp bırakır; tek "chunk-writer" thread'i ardışık
+ * chunk'ları maxRunChunks uzunluğunda tek bir gathering write ile diske yazar. Eksik kalan
+ * (komşusu gelmeyen) chunk'lar en fazla maxDelayMs bekletilir. Bekleyen chunk sayısı sınırlı:
+ * disk yetişemezse worker'lar submit'te bekler.
+ */
+final class ChunkWriteCoalescer implements Closeable {
+
+    interface Listener {
+        void onWritten(int chunk);
+        void onFailed(int chunk, IOException e);
+    }
+
+    private static final class Pending {
+        final ByteBuffer data;
+        final long enqueuedAt;
+
+        Pending(ByteBuffer data) {
+            this.data = data;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private final FileChannel channel;
+    private final int maxRunChunks;
+    private final long maxDelayNanos;
+    private final Listener listener;
+    private final Semaphore capacity;
+    private final ChunkBufferPool pool = ChunkBufferPool.SHARED;
+
+    private final TreeMap<Integer, Pending> pending = new TreeMap<>(); // this kilidi altında
+    private boolean closing = false;
+    private final Thread writer;
+
+    // --- SAYAÇLAR (sadece writer thread'i yazar) ---
+    private volatile long writes = 0;
+    private volatile long chunksWritten = 0;
+
+    ChunkWriteCoalescer(FileChannel channel, String name, int maxRunChunks, long maxDelayMs, Listener listener) {
+        this.channel = channel;
+        this.maxRunChunks = maxRunChunks;
+        this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMs);
+        this.listener = listener;
+        this.capacity = new Semaphore(maxRunChunks * 4);
+        this.writer = new Thread(this::writeLoop, "chunk-writer-" + name);
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /** Chunk'ı kopyalayıp kuyruğa alır; data'nın konumu değişmez. */
+    void submit(int chunk, ByteBuffer data) throws InterruptedIOException {
+        try {
+            capacity.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while queueing chunk " + chunk);
+        }
+        ByteBuffer copy = pool.acquire();
+        copy.put(data.duplicate()).flip();
+        synchronized (this) {
+            if (pending.putIfAbsent(chunk, new Pending(copy)) != null) {
+                pool.release(copy);
+                capacity.release();
+                return;
+            }
+            if (runLength(chunk) >= maxRunChunks) notifyAll();
+        }
+    }
+
+    // chunk'ı içeren ardışık bekleyen chunk dizisinin uzunluğu
+    private int runLength(int chunk) {
+        int first = chunk;
+        while (pending.containsKey(first - 1)) first--;
+        int last = chunk;
+        while (pending.containsKey(last + 1)) last++;
+        return last - first + 1;
+    }
+
+    private void writeLoop() {
+        while (true) {
+            List<List<Map.Entry<Integer, Pending>>> runs;
+            boolean exit;
+            synchronized (this) {
+                try {
+                    if (!closing) wait(TimeUnit.NANOSECONDS.toMillis(maxDelayNanos) + 1);
+                } catch (InterruptedException e) {
+                    closing = true;
+                }
+                runs = takeRuns(closing);
+                exit = closing && pending.isEmpty();
+            }
+            for (List<Map.Entry<Integer, Pending>> run : runs) write(run);
+            if (exit) return;
+        }
+    }
+
+    // Yazılacak diziler: maxRunChunks dolan diziler, bekleme süresi dolanlar ve kapanışta hepsi
+    private List<List<Map.Entry<Integer, Pending>>> takeRuns(boolean all) {
+        List<List<Map.Entry<Integer, Pending>>> runs = new ArrayList<>();
+        List<Map.Entry<Integer, Pending>> run = new ArrayList<>();
+        long now = System.nanoTime();
+        long oldest = Long.MAX_VALUE;
+        int prev = Integer.MIN_VALUE;
+
+        for (Map.Entry<Integer, Pending> e : pending.entrySet()) {
+            if (!run.isEmpty() && (e.getKey() != prev + 1 || run.size() == maxRunChunks)) {
+                if (all || run.size() == maxRunChunks || now - oldest >= maxDelayNanos) runs.add(run);
+                run = new ArrayList<>();
+                oldest = Long.MAX_VALUE;
+            }
+            run.add(Map.entry(e.getKey(), e.getValue()));
+            oldest = Math.min(oldest, e.getValue().enqueuedAt);
+            prev = e.getKey();
+        }
+        if (!run.isEmpty() && (all || run.size() == maxRunChunks || now - oldest >= maxDelayNanos)) runs.add(run);
+
+        for (List<Map.Entry<Integer, Pending>> r : runs) {
+            for (Map.Entry<Integer, Pending> e : r) pending.remove(e.getKey());
+        }
+        return runs;
+    }
+
+    // Diziyi tek seferde yaz; kanal konumunu sadece bu thread kullanır
+    private void write(List<Map.Entry<Integer, Pending>> run) {
+        ByteBuffer[] buffers = new ByteBuffer[run.size()];
+        for (int i = 0; i < buffers.length; i++) buffers[i] = run.get(i).getValue().data;
+        long position = (long) run.get(0).getKey() * Constants.CHUNK_SIZE;
+        IOException failure = null;
+        try {
+            channel.position(position);
+            long left = 0;
+            for (ByteBuffer b : buffers) left += b.remaining();
+            while (left > 0) left -= channel.write(buffers);
+            writes++;
+            chunksWritten += buffers.length;
+        } catch (IOException e) {
+            failure = e;
+        }
+
+        for (Map.Entry<Integer, Pending> e : run) {
+            if (failure == null) listener.onWritten(e.getKey());
+            else listener.onFailed(e.getKey(), failure);
+            pool.release(e.getValue().data);
+        }
+        capacity.release(run.size());
+    }
+
+    /** Bekleyen her şeyi yazar ve writer thread'ini bitirir. */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closing = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    long writes() { return writes; }
+    long chunksWritten() { return chunksWritten; }
+}
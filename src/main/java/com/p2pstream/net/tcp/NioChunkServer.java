@@ -0,0 +1,365 @@
+package com.p2pstream.net.tcp;
+
+import com.p2pstream.model.Constants;
+import com.p2pstream.model.VideoMetadata;
+import com.p2pstream.net.throttle.BandwidthManager;
+import com.p2pstream.net.throttle.TokenBucket;
+import com.p2pstream.service.FileService;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selector tabanlı chunk sunucusu.
+ * Tek bir accept thread'i bağlantıları kabul eder, az sayıda event-loop thread'i
+ * istekleri (binary ChunkProtocol frame'leri veya eski "fileName:chunkIndex" satırları)
+ * okur ve chunk cevaplarını non-blocking yazar.
+ * Chunk verisi heap'e kopyalanmadan FileChannel.transferTo ile doğrudan sokete aktarılır.
+ * Bağlantı başına thread açılmaz.
+ */
+public class NioChunkServer extends Thread implements ChunkServer {
+
+    private static final int MAX_REQUEST_LINE = 4096;
+    private static final long THROTTLE_RETRY_MS = 10;
+
+    private final int port;
+    private final int maxConnections;
+    private final EventLoop[] loops;
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final FileService fileService;
+
+    public NioChunkServer(FileService fileService) {
+        this(fileService, Constants.TCP_PORT, Constants.TCP_EVENT_LOOPS, Constants.TCP_MAX_CONNECTIONS);
+    }
+
+    public NioChunkServer(FileService fileService, int port, int eventLoops, int maxConnections) {
+        super("nio-chunk-acceptor");
+        this.fileService = fileService;
+        this.port = port;
+        this.maxConnections = maxConnections;
+        this.loops = new EventLoop[Math.max(1, eventLoops)];
+    }
+
+    @Override
+    public void run() {
+        try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
+            serverChannel.bind(new InetSocketAddress(port));
+
+            for (int i = 0; i < loops.length; i++) {
+                loops[i] = new EventLoop();
+                Thread t = new Thread(loops[i], "nio-chunk-loop-" + i);
+                t.setDaemon(true);
+                t.start();
+            }
+            System.out.println("🚀 Chunk File Server Başlatıldı (NIO, " + loops.length + " event loop): Port " + port);
+
+            int next = 0;
+            while (true) {
+                SocketChannel client = serverChannel.accept();
+                if (openConnections.incrementAndGet() > maxConnections) {
+                    openConnections.decrementAndGet();
+                    System.out.println("⚠️ Bağlantı limiti dolu (" + maxConnections + "), reddedildi: " + client.getRemoteAddress());
+                    closeQuietly(client);
+                    continue;
+                }
+                loops[next].register(client);
+                next = (next + 1) % loops.length;
+            }
+        } catch (IOException e) { e.printStackTrace(); }
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+
+    private static void closeQuietly(Channel channel) {
+        try { channel.close(); } catch (IOException e) {}
+    }
+
+    // --- EVENT LOOP ---
+
+    private final class EventLoop implements Runnable {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final List<Connection> throttled = new ArrayList<>(); // sadece loop thread'i erişir
+
+        EventLoop() throws IOException {
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                try {
+                    selector.select(throttled.isEmpty() ? 0 : THROTTLE_RETRY_MS);
+                    registerPending();
+                    resumeThrottled();
+
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        Connection conn = (Connection) key.attachment();
+                        try {
+                            if (key.isValid() && key.isWritable()) conn.onWritable();
+                            if (key.isValid() && key.isReadable()) conn.onReadable();
+                        } catch (IOException | RuntimeException e) {
+                            conn.close();
+                        }
+                    }
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        void throttle(Connection conn) {
+            throttled.add(conn);
+        }
+
+        private void resumeThrottled() {
+            if (throttled.isEmpty()) return;
+            List<Connection> retry = new ArrayList<>(throttled);
+            throttled.clear();
+            for (Connection conn : retry) {
+                if (conn.closed) continue;
+                try { conn.onWritable(); } catch (IOException | RuntimeException e) { conn.close(); }
+            }
+        }
+
+        private void registerPending() {
+            SocketChannel channel;
+            while ((channel = pending.poll()) != null) {
+                try {
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                    SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                    key.attach(new Connection(channel, key, this));
+                } catch (IOException e) {
+                    openConnections.decrementAndGet();
+                    closeQuietly(channel);
+                }
+            }
+        }
+    }
+
+    // --- BAĞLANTI DURUMU ---
+
+    private final class Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final ByteBuffer in = ByteBuffer.allocate(MAX_REQUEST_LINE);
+        private final ByteBuffer header = ByteBuffer.allocate(ChunkProtocol.RESPONSE_HEADER_BYTES);
+
+        // Zero-copy gönderim durumu: dosyadan sokete FileChannel.transferTo (sendfile)
+        private FileChannel file;
+        private String openFileName; // Aynı dosyadan ardışık isteklerde kanal yeniden açılmaz
+        private long sendPosition;
+        private long sendRemaining;
+        private ByteBuffer body; // transferTo dışındaki küçük payload'lar (hash listesi)
+
+        private final EventLoop loop;
+        private final String peerIp; // peer kovası her gönderimde aranır: boşta kalan kova silinebilir
+
+        private boolean writing = false;
+        private boolean closed = false;
+
+        Connection(SocketChannel channel, SelectionKey key, EventLoop loop) throws IOException {
+            this.channel = channel;
+            this.key = key;
+            this.loop = loop;
+            this.peerIp = ((InetSocketAddress) channel.getRemoteAddress()).getAddress().getHostAddress();
+        }
+
+        void onReadable() throws IOException {
+            int read = channel.read(in);
+            if (read == -1) { close(); return; }
+            processRequests();
+        }
+
+        void onWritable() throws IOException {
+            flush();
+            if (!writing) processRequests();
+        }
+
+        // Tampondaki tam istekleri sırayla işle. Cevap yazılırken yeni istek okunmaz (backpressure).
+        // İstemci pipelining yaptığında sıradaki istekler zaten tampondadır, round-trip beklenmez.
+        private void processRequests() throws IOException {
+            while (!writing && !closed) {
+                boolean handled;
+                in.flip();
+                try {
+                    handled = in.hasRemaining()
+                            && (in.get(in.position()) == ChunkProtocol.MAGIC ? handleFrame() : handleLine());
+                } finally {
+                    in.compact();
+                }
+                if (!handled) {
+                    if (!in.hasRemaining()) close(); // tampona sığmayan istek
+                    return;
+                }
+                flush();
+            }
+        }
+
+        // --- BINARY PROTOKOL (v1) ---
+        private boolean handleFrame() throws IOException {
+            ChunkProtocol.Request req = ChunkProtocol.decodeRequest(in);
+            if (req == null) return false;
+
+            byte status;
+            if (req.version != ChunkProtocol.VERSION) status = ChunkProtocol.STATUS_UNSUPPORTED_VERSION;
+            else if (req.chunkIndex == ChunkProtocol.CHUNK_INDEX_HASHES) {
+                respondHashes(req);
+                return true;
+            }
+            else if (req.chunkIndex < 0 || req.fileName.isEmpty()) status = ChunkProtocol.STATUS_BAD_REQUEST;
+            else if (!openFile(req.fileName)) status = ChunkProtocol.STATUS_NOT_FOUND;
+            else if (!prepareTransfer(req.chunkIndex)) status = ChunkProtocol.STATUS_OUT_OF_RANGE;
+            else status = ChunkProtocol.STATUS_OK;
+
+            if (status != ChunkProtocol.STATUS_OK) sendRemaining = 0;
+            header.clear();
+            ChunkProtocol.encodeResponse(header, status, req.requestId, req.chunkIndex, (int) sendRemaining);
+            header.flip();
+            writing = true;
+            return true;
+        }
+
+        // Chunk hash listesi küçük bir heap tamponundan gönderilir
+        private void respondHashes(ChunkProtocol.Request req) {
+            VideoMetadata meta = fileService.getFileByName(req.fileName);
+            byte[] hashes = (meta == null) ? null : meta.getChunkHashes();
+
+            sendRemaining = 0;
+            body = (hashes == null) ? null : ByteBuffer.wrap(hashes);
+            header.clear();
+            ChunkProtocol.encodeResponse(header,
+                    hashes == null ? ChunkProtocol.STATUS_NOT_FOUND : ChunkProtocol.STATUS_OK,
+                    req.requestId, req.chunkIndex, hashes == null ? 0 : hashes.length);
+            header.flip();
+            writing = true;
+        }
+
+        // --- ESKİ METİN PROTOKOLÜ: "fileName:chunkIndex\n", başlıksız ham cevap ---
+        private boolean handleLine() throws IOException {
+            int newline = -1;
+            for (int i = in.position(); i < in.limit(); i++) {
+                if (in.get(i) == '\n') { newline = i; break; }
+            }
+            if (newline < 0) return false;
+
+            int end = (newline > in.position() && in.get(newline - 1) == '\r') ? newline - 1 : newline;
+            byte[] bytes = new byte[end - in.position()];
+            in.get(bytes);
+            in.position(newline + 1);
+            String request = new String(bytes, StandardCharsets.UTF_8);
+
+            int sep = request.lastIndexOf(':');
+            if (sep <= 0) return true;
+
+            String fileName = request.substring(0, sep);
+            int chunkIndex;
+            try { chunkIndex = Integer.parseInt(request.substring(sep + 1).trim()); }
+            catch (NumberFormatException e) { return true; }
+
+            // Dosya yoksa eski sunucu gibi sessizce geç
+            if (chunkIndex >= 0 && openFile(fileName) && prepareTransfer(chunkIndex)) {
+                header.clear().limit(0);
+                writing = true;
+            }
+            return true;
+        }
+
+        private boolean prepareTransfer(int chunkIndex) throws IOException {
+            long offset = (long) chunkIndex * Constants.CHUNK_SIZE;
+            long size = file.size();
+            if (offset >= size) return false;
+
+            sendPosition = offset;
+            sendRemaining = Math.min(Constants.CHUNK_SIZE, size - offset);
+            return true;
+        }
+
+        private boolean openFile(String fileName) throws IOException {
+            if (file != null && fileName.equals(openFileName)) return true;
+            closeFile();
+
+            File f = new File(Constants.SHARED_FOLDER + "/" + fileName);
+            if (!f.isFile()) return false;
+
+            file = FileChannel.open(f.toPath(), StandardOpenOption.READ);
+            openFileName = fileName;
+            return true;
+        }
+
+        // Kısmi yazma: soket tamponu dolarsa OP_WRITE ile kalınan yerden devam edilir
+        // Upload limiti doluysa bağlantı bir süre susturulur, event loop token gelince tekrar dener
+        private void flush() throws IOException {
+            if (!writing) return;
+            if (header.hasRemaining()) channel.write(header);
+            if (!header.hasRemaining() && body != null) {
+                channel.write(body);
+                if (!body.hasRemaining()) body = null;
+            }
+
+            boolean throttled = false;
+            TokenBucket uploadBucket = BandwidthManager.peerUpload(peerIp);
+            while (!header.hasRemaining() && sendRemaining > 0) {
+                long allowed = Math.min(sendRemaining,
+                        Math.min(BandwidthManager.globalUpload().available(), uploadBucket.available()));
+                if (allowed <= 0) { throttled = true; break; }
+
+                long sent = file.transferTo(sendPosition, allowed, channel);
+                if (sent <= 0) break;
+                BandwidthManager.globalUpload().consume(sent);
+                uploadBucket.consume(sent);
+                sendPosition += sent;
+                sendRemaining -= sent;
+            }
+
+            if (throttled) {
+                key.interestOps(0);
+                loop.throttle(this);
+            } else if (header.hasRemaining() || body != null || sendRemaining > 0) {
+                key.interestOps(SelectionKey.OP_WRITE);
+            } else {
+                writing = false;
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        private void closeFile() {
+            if (file != null) closeQuietly(file);
+            file = null;
+            openFileName = null;
+        }
+
+        void close() {
+            if (closed) return;
+            closed = true;
+            key.cancel();
+            closeFile();
+            closeQuietly(channel);
+            openConnections.decrementAndGet();
+        }
+    }
+}
@@ -2,11 +2,18 @@ package com.p2pstream.net.tcp;
 
 import com.p2pstream.HeadlessPeer;
 import com.p2pstream.model.Constants;
+import com.p2pstream.net.throttle.BandwidthManager;
+import com.p2pstream.net.throttle.TokenBucket;
+import com.p2pstream.service.ChunkBufferPool;
+import com.p2pstream.service.FileService;
+import com.p2pstream.service.MerkleTree;
 
 import java.io.*;
-import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.security.MessageDigest;
 import java.util.*;
 import java.util.concurrent.*;
@@ -19,15 +26,36 @@ public class ParallelDownloader implements Runnable {
     private final List<String> peerIps;
     private final int totalChunks;
 
-    private final ConcurrentHashMap<Integer, Boolean> downloadedChunks = new ConcurrentHashMap<>();
-    private final ConcurrentLinkedQueue<Integer> failedChunks = new ConcurrentLinkedQueue<>();
+    private final String merkleRoot; // Arama sonucunda ilan edilen kök; bilinmiyorsa null
+    private final FileService library; // Biten dosya tam tarama beklemeden buraya eklenir; null olabilir
+    private final ChunkScheduler scheduler;
+    private final Set<ChunkClient> openClients = ConcurrentHashMap.newKeySet();
+    private final Map<String, Integer> badChunksByPeer = new ConcurrentHashMap<>();
+    private TokenBucket bandwidth;
+    private ChunkJournal journal;
+    private FileChannel channel; // Tüm worker'ların paylaştığı kanal; konumsal yazma kilit gerektirmez
+    private ChunkWriteCoalescer coalescer; // WRITE_COALESCE_CHUNKS > 1 ise; null = doğrudan yazma
+    private ChunkAvailability availability; // /api/watch okuyucularını chunk inince uyandırır; null olabilir
+    private byte[] chunkHashes; // Merkle yaprakları; null ise bozuk chunk ancak sondaki dosya hash'inde yakalanır
 
     public ParallelDownloader(String fileName, String fileHash, long totalSize, List<String> peerIps) {
+        this(fileName, fileHash, totalSize, peerIps, null);
+    }
+
+    public ParallelDownloader(String fileName, String fileHash, long totalSize, List<String> peerIps, String merkleRoot) {
+        this(fileName, fileHash, totalSize, peerIps, merkleRoot, null);
+    }
+
+    public ParallelDownloader(String fileName, String fileHash, long totalSize, List<String> peerIps, String merkleRoot,
+                              FileService library) {
         this.fileName = fileName;
+        this.library = library;
+        this.merkleRoot = merkleRoot;
         this.fileHash = fileHash;
         this.totalSize = totalSize;
-        this.peerIps = peerIps;
+        this.peerIps = new ArrayList<>(new LinkedHashSet<>(peerIps));
         this.totalChunks = (int) Math.ceil((double) totalSize / Constants.CHUNK_SIZE);
+        this.scheduler = new ChunkScheduler(totalChunks, this.peerIps, Constants.ENDGAME_CHUNKS);
     }
 
     @Override
@@ -44,158 +72,275 @@ public class ParallelDownloader implements Runnable {
 
         File bufferFile = new File(Constants.BUFFER_FOLDER + "/" + fileName);
         if (bufferFile.getParentFile() != null) bufferFile.getParentFile().mkdirs();
+        availability = HeadlessPeer.chunkAvailability.get(fileName);
+
+        // Önceki oturumdan kalan .parts journal'ı varsa sadece eksik chunk'lar indirilir
+        journal = ChunkJournal.openOrCreate(bufferFile, fileName, fileHash, totalSize, totalChunks, merkleRoot, peerIps);
+        BitSet resumed = journal.completed();
 
         try (RandomAccessFile raf = new RandomAccessFile(bufferFile, "rw")) {
             if (raf.length() != totalSize) raf.setLength(totalSize);
-        } catch (IOException e) { e.printStackTrace(); return; }
-
-        int numPeers = peerIps.size();
-        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numPeers));
-
-        int chunksPerPeer = totalChunks / numPeers;
-        int remainder = totalChunks % numPeers;
-        int startChunkIndex = 0;
-
-        for (String peerIp : peerIps) {
-            int assignedCount = chunksPerPeer + (remainder > 0 ? 1 : 0);
-            if (remainder > 0) remainder--;
-            if (assignedCount == 0) continue;
-
-            int endChunkIndex = startChunkIndex + assignedCount;
+            journal.flush();
+            channel = FileChannel.open(bufferFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            endStreaming("buffer file could not be prepared");
+            return;
+        }
+        if (Constants.WRITE_COALESCE_CHUNKS > 1) {
+            coalescer = new ChunkWriteCoalescer(channel, fileName, Constants.WRITE_COALESCE_CHUNKS,
+                    Constants.WRITE_COALESCE_DELAY_MS, new ChunkWriteCoalescer.Listener() {
+                        @Override public void onWritten(int chunk) { onCoalescedWrite(chunk); }
+                        @Override public void onFailed(int chunk, IOException e) { onCoalescedWriteFailed(chunk, e); }
+                    });
+        }
 
-            // --- LOG: KİM HANGİ PARÇAYI ALIYOR? ---
-            String assignmentLog = String.format("👉 TASK ASSIGNED: Peer [%s] gets Chunks [%d - %d]", peerIp, startChunkIndex, (endChunkIndex - 1));
-            System.out.println(assignmentLog);
-            HeadlessPeer.broadcastLog(assignmentLog);
+        if (!resumed.isEmpty()) {
+            scheduler.markCompleted(resumed);
+            if (availability != null) availability.markAvailable(resumed);
+            HeadlessPeer.broadcastLog("♻️ RESUMING: " + resumed.cardinality() + "/" + totalChunks + " chunks already on disk");
+            reportProgress();
+        }
 
-            final int myStart = startChunkIndex;
-            final int myEnd = endChunkIndex;
+        bandwidth = BandwidthManager.openDownload(fileName);
 
-            executor.submit(() -> downloadRangePersistent(peerIp, myStart, myEnd, bufferFile));
-            startChunkIndex = endChunkIndex;
+        chunkHashes = fetchChunkHashes();
+        if (chunkHashes == null) {
+            HeadlessPeer.broadcastLog("⚠️ No chunk hash list available, only the final file hash will be checked");
         }
 
-        executor.shutdown();
-        try { executor.awaitTermination(60, TimeUnit.MINUTES); } catch (InterruptedException e) {}
-
-        if (!failedChunks.isEmpty()) {
-            HeadlessPeer.broadcastLog("⚠️ Retrying " + failedChunks.size() + " failed chunks...");
-            processRetryQueue(bufferFile);
+        // Sabit aralık yok: her peer ortak havuzdan işi bittikçe yeni chunk çeker
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, peerIps.size()));
+        for (String peerIp : peerIps) {
+            String joinLog = String.format("👉 PEER JOINED POOL: [%s] pulls chunks as it finishes them", peerIp);
+            System.out.println(joinLog);
+            HeadlessPeer.broadcastLog(joinLog);
+            executor.submit(() -> peerWorker(peerIp));
         }
+        executor.shutdown();
 
-        if (downloadedChunks.size() == totalChunks) {
-            if (verifyFileHash(bufferFile)) {
+        try {
+            while (!executor.awaitTermination(200, TimeUnit.MILLISECONDS)) {
+                // Endgame'de yavaş peer'dan gelecek kopyayı bekleme: bloklu okumaları kapatarak iptal et
+                if (scheduler.isComplete()) openClients.forEach(ChunkClient::close);
+            }
+        } catch (InterruptedException e) { Thread.currentThread().interrupt(); }
+        HeadlessPeer.activeDownloads.remove(fileName, this);
+        BandwidthManager.closeDownload(fileName);
+
+        // Worker'lar kuyruktaki her chunk diske inene kadar çalışır; burada kalan sadece peer'lar giderse olur
+        if (coalescer != null) coalescer.close();
+        try { channel.close(); } catch (IOException e) { e.printStackTrace(); }
+
+        if (scheduler.isComplete()) {
+            // Merkle kökü herhangi bir UDP cevabından geliyor ve fileHash'e bağlı değil: sadece bozuk chunk'ı
+            // erken yakalayıp yeniden istemeye yarar. Dosyanın kabulü her zaman SHA-256 ile karar verilir.
+            boolean verified = verifyFileHash(bufferFile);
+            if (verified) {
                 try {
                     File finalFile = new File(Constants.SHARED_FOLDER + "/" + fileName);
                     Files.move(bufferFile.toPath(), finalFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    // Hemen aranabilir olsun ve ağa duyurulsun; SHA-256 tuttuğu için chunk hash'leri bu içeriğe ait
+                    if (library != null) library.addVerifiedFile(finalFile.toPath(), fileHash, merkleRoot, chunkHashes);
                     HeadlessPeer.broadcastProgress(fileHash, totalSize, totalSize, "Completed");
                     HeadlessPeer.broadcastLog("✅ DONE: " + fileName + " is ready!");
-                    HeadlessPeer.downloadedChunksCache.remove(fileName);
+                    endStreaming(null);
+                    journal.delete();
                 } catch (IOException e) { e.printStackTrace(); }
             } else {
                 HeadlessPeer.broadcastLog("❌ HASH MISMATCH: File corrupted.");
+                endStreaming("hash mismatch");
+                journal.delete(); // bozuk veriden devam edilmesin
             }
         } else {
-            HeadlessPeer.broadcastProgress(fileHash, downloadedChunks.size() * Constants.CHUNK_SIZE, totalSize, "Incomplete");
+            try { journal.close(); } catch (IOException e) { e.printStackTrace(); }
+            endStreaming("download incomplete");
+            HeadlessPeer.broadcastProgress(fileHash, (long) scheduler.completedCount() * Constants.CHUNK_SIZE, totalSize, "Incomplete");
         }
     }
 
-    private void downloadRangePersistent(String ip, int startIndex, int endIndex, File bufferFile) {
-        try (Socket socket = new Socket(ip, Constants.TCP_PORT);
-             PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-             InputStream in = socket.getInputStream()) {
+    /** /api/watch oynatma noktası: bu byte'ı içeren chunk ve ardındaki read-ahead penceresi öne alınır. */
+    public void updatePlayhead(long bytePosition) {
+        scheduler.setPlayhead((int) (bytePosition / Constants.CHUNK_SIZE), Constants.READ_AHEAD_CHUNKS);
+    }
 
-            for (int i = startIndex; i < endIndex; i++) {
-                if (downloadedChunks.containsKey(i)) continue;
+    public String getFileName() {
+        return fileName;
+    }
 
-                try {
-                    out.println(fileName + ":" + i);
-
-                    byte[] chunkBuffer = new byte[Constants.CHUNK_SIZE];
-                    int totalBytesRead = 0;
-                    int read;
-
-                    while (totalBytesRead < Constants.CHUNK_SIZE) {
-                        int toRead = Constants.CHUNK_SIZE - totalBytesRead;
-                        read = in.read(chunkBuffer, totalBytesRead, toRead);
-                        if (read == -1) break;
-                        totalBytesRead += read;
-                        if ((long) i * Constants.CHUNK_SIZE + totalBytesRead >= totalSize) break;
+    // Tek peer için kalıcı bağlantı + pipelining; bağlantı koparsa birkaç kez yeniden bağlanır
+    private void peerWorker(String ip) {
+        int failures = 0;
+        while (!scheduler.isComplete() && scheduler.isPeerActive(ip)) {
+            // requestId -> chunkIndex (cevap beklenen, "uçuştaki" istekler)
+            Map<Integer, Integer> inFlight = new LinkedHashMap<>();
+
+            ByteBuffer chunkBuffer = null;
+            try (ChunkClient client = new ChunkClient(ip, Constants.TCP_PORT)) {
+                openClients.add(client);
+                // Havuzdan direct buffer: soketten okuma ve dosyaya yazma ara kopya olmadan
+                chunkBuffer = ChunkBufferPool.SHARED.acquire();
+
+                while (true) {
+                    // Pipeline'ı doldur: round-trip beklemeden PIPELINE_DEPTH kadar istek gönder
+                    int next = ChunkScheduler.WAIT;
+                    while (inFlight.size() < Constants.PIPELINE_DEPTH) {
+                        next = scheduler.next(ip);
+                        if (next < 0) break;
+                        BandwidthManager.acquireDownload(bandwidth, ip, expectedLength(next));
+                        inFlight.put(client.request(fileName, next), next);
+                    }
+                    if (inFlight.isEmpty()) {
+                        if (next == ChunkScheduler.DONE) return;
+                        scheduler.awaitChange(200);
+                        continue;
                     }
 
-                    if (totalBytesRead > 0) {
-                        synchronized (bufferFile) {
-                            try (RandomAccessFile raf = new RandomAccessFile(bufferFile, "rw")) {
-                                raf.seek((long) i * Constants.CHUNK_SIZE);
-                                raf.write(chunkBuffer, 0, totalBytesRead);
-                            }
-                        }
-                        downloadedChunks.put(i, true);
-
-                        Set<Integer> globalSet = HeadlessPeer.downloadedChunksCache.get(fileName);
-                        if (globalSet != null) globalSet.add(i);
-
-                        reportProgress();
-
-                        try { Thread.sleep(300); } catch (InterruptedException e) {}
+                    ChunkProtocol.Response response = client.readResponse(chunkBuffer);
+                    Integer chunkIndex = inFlight.remove(response.requestId);
+                    if (chunkIndex == null) throw new IOException("Unexpected requestId=" + response.requestId);
+                    failures = 0;
 
+                    if (response.status == ChunkProtocol.STATUS_OK && response.payloadLength == expectedLength(chunkIndex)) {
+                        if (chunkHashes != null && !MerkleTree.verifyChunk(chunkHashes, chunkIndex, chunkBuffer)) {
+                            if (!onBadChunk(ip, chunkIndex)) return;
+                            continue;
+                        }
+                        writeChunk(chunkIndex, chunkBuffer, ip);
+                    } else if (response.status == ChunkProtocol.STATUS_NOT_FOUND) {
+                        // Peer dosyayı artık paylaşmıyor: havuzdan çıkar
+                        scheduler.release(chunkIndex, ip);
+                        scheduler.removePeer(ip);
+                        HeadlessPeer.broadcastLog("⚠️ Peer [" + ip + "] does not have " + fileName + " anymore");
+                        return;
                     } else {
-                        failedChunks.add(i);
+                        scheduler.reject(chunkIndex, ip);
                     }
-                } catch (Exception ex) {
-                    failedChunks.add(i);
-                    throw ex;
                 }
-            }
-        } catch (Exception e) {
-            for (int i = startIndex; i < endIndex; i++) {
-                if (!downloadedChunks.containsKey(i) && !failedChunks.contains(i)) {
-                    failedChunks.add(i);
+            } catch (Exception e) {
+                for (int chunkIndex : inFlight.values()) scheduler.release(chunkIndex, ip);
+                if (scheduler.isComplete()) return;
+
+                if (++failures > Constants.MAX_PEER_RECONNECTS) {
+                    scheduler.removePeer(ip);
+                    HeadlessPeer.broadcastLog("❌ Peer [" + ip + "] dropped: " + e.getMessage());
+                    return;
                 }
+                try { Thread.sleep(500L * failures); } catch (InterruptedException ie) { return; }
+            } finally {
+                ChunkBufferPool.SHARED.release(chunkBuffer);
+                openClients.removeIf(c -> !c.isOpen());
             }
         }
     }
 
-    private void processRetryQueue(File bufferFile) {
-        Random rand = new Random();
-        while (!failedChunks.isEmpty()) {
-            Integer chunkId = failedChunks.poll();
-            if (chunkId == null) break;
+    /**
+     * Bozuk chunk sadece onu gönderen peer'a yazılır: chunk hemen başka bir peer'dan tekrar istenir,
+     * diğer peer'lar etkilenmez. Çok sayıda bozuk chunk gönderen peer havuzdan çıkarılır.
+     * @return peer havuzda kalmaya devam ediyorsa true
+     */
+    private boolean onBadChunk(String ip, int chunkIndex) {
+        int bad = badChunksByPeer.merge(ip, 1, Integer::sum);
+        scheduler.reject(chunkIndex, ip);
+        HeadlessPeer.broadcastLog("⚠️ Corrupt chunk " + chunkIndex + " from [" + ip + "], refetching from another peer");
+
+        if (bad >= Constants.MAX_BAD_CHUNKS_PER_PEER) {
+            scheduler.removePeer(ip);
+            HeadlessPeer.broadcastLog("❌ Peer [" + ip + "] dropped after " + bad + " corrupt chunks");
+            return false;
+        }
+        return true;
+    }
 
-            String backupIp = peerIps.get(rand.nextInt(peerIps.size()));
+    // Chunk hash listesini peer'lardan sırayla iste; ilan edilen Merkle köküyle uyuşmayan liste reddedilir.
+    // Kök ilan edilmemişse ilk peer'ın listesine güvenmek dürüst peer'lara ceza yazdırabilir: liste hiç
+    // kullanılmaz, chunk doğrulaması ve ceza yoktur, karar son SHA-256 kontrolündedir.
+    private byte[] fetchChunkHashes() {
+        if (merkleRoot == null) return null;
+        int expectedBytes = totalChunks * MerkleTree.HASH_BYTES;
+        for (String ip : peerIps) {
+            try (ChunkClient client = new ChunkClient(ip, Constants.TCP_PORT)) {
+                client.request(fileName, ChunkProtocol.CHUNK_INDEX_HASHES);
+                ByteBuffer buf = ByteBuffer.allocate(expectedBytes);
+                ChunkProtocol.Response response = client.readResponse(buf);
+                if (response.status != ChunkProtocol.STATUS_OK || response.payloadLength != expectedBytes) continue;
+
+                byte[] hashes = new byte[expectedBytes];
+                buf.get(hashes);
+                if (merkleRoot != null && !merkleRoot.equalsIgnoreCase(MerkleTree.rootHex(hashes))) {
+                    HeadlessPeer.broadcastLog("⚠️ Chunk hash list from [" + ip + "] does not match Merkle root, ignored");
+                    continue;
+                }
+                return hashes;
+            } catch (IOException e) {
+                // Sıradaki peer'ı dene
+            }
+        }
+        return null;
+    }
 
-            try (Socket socket = new Socket(backupIp, Constants.TCP_PORT);
-                 PrintWriter out = new PrintWriter(socket.getOutputStream(), true);
-                 InputStream in = socket.getInputStream()) {
+    // Son chunk dışında hepsi tam CHUNK_SIZE; cevap uzunluğu artık tahmin edilmiyor, doğrulanıyor
+    private int expectedLength(int chunkIndex) {
+        long offset = (long) chunkIndex * Constants.CHUNK_SIZE;
+        return (int) Math.min(Constants.CHUNK_SIZE, totalSize - offset);
+    }
 
-                out.println(fileName + ":" + chunkId);
-                byte[] data = new byte[Constants.CHUNK_SIZE];
-                // Basit okuma
-                int read = in.read(data);
+    private void writeChunk(int chunkIndex, ByteBuffer data, String ip) throws IOException {
+        if (coalescer != null) {
+            // Sadece "yazılacak" olarak işaretlenir: tamamlanmış sayılması (ve ilerleme) yazıcıdan sonra.
+            // Endgame kopyası (zaten yazılmış veya kuyrukta) burada düşer.
+            if (scheduler.queueForWrite(chunkIndex, ip)) coalescer.submit(chunkIndex, data);
+            return;
+        }
+        // Endgame'de aynı chunk ikinci kez gelebilir; ilk gelen yazılır
+        if (scheduler.isDone(chunkIndex)) {
+            scheduler.complete(chunkIndex, ip);
+            return;
+        }
 
-                if (read > 0) {
-                    synchronized (bufferFile) {
-                        try (RandomAccessFile raf = new RandomAccessFile(bufferFile, "rw")) {
-                            raf.seek((long) chunkId * Constants.CHUNK_SIZE);
-                            raf.write(data, 0, read);
-                        }
-                    }
-                    downloadedChunks.put(chunkId, true);
-                    Set<Integer> globalSet = HeadlessPeer.downloadedChunksCache.get(fileName);
-                    if (globalSet != null) globalSet.add(chunkId);
-                    reportProgress();
+        // Konumsal yazma kanalın konumunu değiştirmez: worker'lar birbirini beklemeden farklı bölgelere yazar
+        ByteBuffer src = data.duplicate();
+        long position = (long) chunkIndex * Constants.CHUNK_SIZE;
+        while (src.hasRemaining()) channel.write(src, position + src.position() - data.position());
+        if (!scheduler.complete(chunkIndex, ip)) return;
+        onChunkWritten(chunkIndex);
+        reportProgress();
+    }
 
-                    // Retry yaparken de yavaşlatalım ki görebilesiniz
-                    try { Thread.sleep(500); } catch (InterruptedException e) {}
-                }
-            } catch (Exception e) {}
+    // Chunk diskte: bekleyen izleyiciler uyanır ve journal'a işlenir
+    private void onChunkWritten(int chunkIndex) throws IOException {
+        if (availability != null) availability.markAvailable(chunkIndex);
+        journal.markDone(chunkIndex);
+    }
+
+    // Yazma birleştiricisinin thread'inden: hatayı iletecek worker yok, loglanır
+    private void onCoalescedWrite(int chunkIndex) {
+        scheduler.writeDone(chunkIndex);
+        try {
+            onChunkWritten(chunkIndex);
+        } catch (IOException e) {
+            HeadlessPeer.broadcastLog("⚠️ Resume journal update failed for " + fileName + ": " + e.getMessage());
         }
+        reportProgress();
+    }
+
+    private void onCoalescedWriteFailed(int chunkIndex, IOException e) {
+        HeadlessPeer.broadcastLog("⚠️ Chunk " + chunkIndex + " could not be written (" + e.getMessage() + "), refetching");
+        scheduler.writeFailed(chunkIndex);
+    }
+
+    // İzleyicileri serbest bırak: failure == null ise dosya tamam, değilse bekleyenler hata alır
+    private void endStreaming(String failure) {
+        if (availability == null) return;
+        if (failure == null) availability.finish();
+        else availability.abort(failure);
+        HeadlessPeer.chunkAvailability.remove(fileName, availability);
     }
 
     private boolean verifyFileHash(File file) {
         try (InputStream fis = new FileInputStream(file)) {
             MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] block = new byte[4096];
+            byte[] block = new byte[64 * 1024];
             int length;
             while ((length = fis.read(block)) > 0) digest.update(block, 0, length);
 
@@ -208,7 +353,7 @@ public class ParallelDownloader implements Runnable {
     }
 
     private void reportProgress() {
-        long currentBytes = (long) downloadedChunks.size() * Constants.CHUNK_SIZE;
+        long currentBytes = (long) scheduler.completedCount() * Constants.CHUNK_SIZE;
         if (currentBytes > totalSize) currentBytes = totalSize;
         String status = (currentBytes > totalSize * 0.05) ? "Playing/Downloading" : "Buffering...";
         HeadlessPeer.broadcastProgress(fileHash, currentBytes, totalSize, status);
@@ -1,11 +1,30 @@
 package com.p2pstream.net.tcp;
 
 import com.p2pstream.model.Constants;
+import com.p2pstream.model.VideoMetadata;
+import com.p2pstream.net.throttle.BandwidthManager;
+import com.p2pstream.service.ChunkBufferPool;
+import com.p2pstream.service.FileService;
 import java.io.*;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TcpServer extends Thread implements ChunkServer {
+    private final AtomicInteger openConnections = new AtomicInteger();
+    private final FileService fileService;
+
+    public TcpServer(FileService fileService) {
+        this.fileService = fileService;
+    }
+
+    @Override
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
 
-public class TcpServer extends Thread {
     @Override
     public void run() {
         try (ServerSocket serverSocket = new ServerSocket(Constants.TCP_PORT)) {
@@ -19,41 +38,128 @@ public class TcpServer extends Thread {
     }
 
     private void handlePersistentConnection(Socket socket) {
+        openConnections.incrementAndGet();
+        String peerIp = socket.getInetAddress().getHostAddress();
         try (
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-                OutputStream out = socket.getOutputStream()
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream(), Constants.CHUNK_SIZE))
         ) {
-            String request;
             // while döngüsü ile bağlantı kopana kadar istekleri dinle (Keep-Alive)
-            while ((request = in.readLine()) != null) {
-                String[] parts = request.split(":");
-                if (parts.length < 2) continue;
-
-                String fileName = parts[0];
-                int chunkIndex = Integer.parseInt(parts[1]);
-
-                File file = new File(Constants.SHARED_FOLDER + "/" + fileName);
-                if (!file.exists()) continue; // Dosya yoksa sessizce geç veya hata kodu dön
-
-                try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
-                    long offset = (long) chunkIndex * Constants.CHUNK_SIZE;
-                    if (offset >= file.length()) continue;
-
-                    raf.seek(offset);
-                    byte[] buffer = new byte[Constants.CHUNK_SIZE];
-                    int bytesRead = raf.read(buffer);
+            while (true) {
+                in.mark(1);
+                int first = in.read();
+                if (first == -1) break;
 
-                    if (bytesRead > 0) {
-                        out.write(buffer, 0, bytesRead);
-                        out.flush(); // Tamponu boşalt, veriyi yolla
-                    }
+                if ((byte) first == ChunkProtocol.MAGIC) {
+                    handleFrame(in, out, peerIp);
+                } else {
+                    in.reset();
+                    handleLine(readLine(in), out, peerIp);
                 }
             }
         } catch (Exception e) {
             // Bağlantı koptuğunda buraya düşer
             System.out.println("connection ended: " + socket.getInetAddress());
         } finally {
+            openConnections.decrementAndGet();
             try { socket.close(); } catch (IOException e) {}
         }
     }
-}
\ No newline at end of file
+
+    // --- BINARY PROTOKOL (v1): her isteğe başlıklı cevap, hata durumunda da ---
+    private void handleFrame(DataInputStream in, DataOutputStream out, String peerIp) throws IOException {
+        byte version = in.readByte();
+        int requestId = in.readInt();
+        int chunkIndex = in.readInt();
+        int nameLen = in.readUnsignedShort();
+        if (nameLen > ChunkProtocol.MAX_NAME_BYTES) throw new IOException("Invalid nameLen=" + nameLen);
+        byte[] name = new byte[nameLen];
+        in.readFully(name);
+
+        byte[] buffer = null;
+        ByteBuffer pooled = null; // Chunk verisi havuzdan; cevap yazılınca geri verilir
+        int bytesRead = 0;
+        byte status;
+        String fileName = new String(name, StandardCharsets.UTF_8);
+        File file = new File(Constants.SHARED_FOLDER + "/" + fileName);
+
+        if (version != ChunkProtocol.VERSION) status = ChunkProtocol.STATUS_UNSUPPORTED_VERSION;
+        else if (chunkIndex == ChunkProtocol.CHUNK_INDEX_HASHES) {
+            // Merkle yaprakları: chunk başına 32 byte SHA-256
+            VideoMetadata meta = fileService.getFileByName(fileName);
+            buffer = (meta == null) ? null : meta.getChunkHashes();
+            bytesRead = (buffer == null) ? 0 : buffer.length;
+            status = (buffer == null) ? ChunkProtocol.STATUS_NOT_FOUND : ChunkProtocol.STATUS_OK;
+        }
+        else if (chunkIndex < 0 || nameLen == 0) status = ChunkProtocol.STATUS_BAD_REQUEST;
+        else if (!file.isFile()) status = ChunkProtocol.STATUS_NOT_FOUND;
+        else if ((long) chunkIndex * Constants.CHUNK_SIZE >= file.length()) status = ChunkProtocol.STATUS_OUT_OF_RANGE;
+        else {
+            pooled = ChunkBufferPool.HEAP.acquire();
+            buffer = pooled.array();
+            status = ChunkProtocol.STATUS_OK;
+        }
+
+        try {
+            if (pooled != null) bytesRead = readChunk(file, chunkIndex, buffer);
+            ByteBuffer header = ByteBuffer.allocate(ChunkProtocol.RESPONSE_HEADER_BYTES);
+            ChunkProtocol.encodeResponse(header, status, requestId, chunkIndex, bytesRead);
+            out.write(header.array());
+            if (bytesRead > 0) {
+                if (chunkIndex >= 0) BandwidthManager.acquireUpload(peerIp, bytesRead);
+                out.write(buffer, 0, bytesRead);
+            }
+            out.flush();
+        } finally {
+            ChunkBufferPool.HEAP.release(pooled);
+        }
+    }
+
+    // --- ESKİ METİN PROTOKOLÜ: "fileName:chunkIndex", başlıksız ham cevap ---
+    private void handleLine(String request, OutputStream out, String peerIp) throws IOException {
+        if (request == null) return;
+        String[] parts = request.split(":");
+        if (parts.length < 2) return;
+
+        String fileName = parts[0];
+        int chunkIndex = Integer.parseInt(parts[1]);
+
+        File file = new File(Constants.SHARED_FOLDER + "/" + fileName);
+        if (!file.exists()) return; // Dosya yoksa sessizce geç
+        if ((long) chunkIndex * Constants.CHUNK_SIZE >= file.length()) return;
+
+        ByteBuffer pooled = ChunkBufferPool.HEAP.acquire();
+        try {
+            byte[] buffer = pooled.array();
+            int bytesRead = readChunk(file, chunkIndex, buffer);
+            if (bytesRead > 0) {
+                BandwidthManager.acquireUpload(peerIp, bytesRead);
+                out.write(buffer, 0, bytesRead);
+                out.flush(); // Tamponu boşalt, veriyi yolla
+            }
+        } finally {
+            ChunkBufferPool.HEAP.release(pooled);
+        }
+    }
+
+    private int readChunk(File file, int chunkIndex, byte[] buffer) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek((long) chunkIndex * Constants.CHUNK_SIZE);
+            int total = 0;
+            int read;
+            while (total < buffer.length && (read = raf.read(buffer, total, buffer.length - total)) != -1) {
+                total += read;
+            }
+            return total;
+        }
+    }
+
+    private String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1 && b != '\n') line.write(b);
+        if (b == -1 && line.size() == 0) return null;
+        String s = line.toString(StandardCharsets.UTF_8);
+        return s.endsWith("\r") ? s.substring(0, s.length() - 1) : s;
+    }
+}
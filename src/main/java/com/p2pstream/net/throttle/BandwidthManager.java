@@ -0,0 +1,116 @@
+package com.p2pstream.net.throttle;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global, indirme başına ve peer başına token bucket'lar.
+ * Tüm limitler byte/saniye cinsindendir ve 0 = sınırsız (varsayılan).
+ * /api/limits üzerinden çalışırken değiştirilebilir; mevcut kovalar anında güncellenir.
+ */
+public final class BandwidthManager {
+    private BandwidthManager() {}
+
+    private static final TokenBucket globalDownload = new TokenBucket(0);
+    private static final TokenBucket globalUpload = new TokenBucket(0);
+
+    private static volatile long perDownloadRate = 0;
+    private static volatile long perPeerDownloadRate = 0;
+    private static volatile long perPeerUploadRate = 0;
+
+    private static final Map<String, TokenBucket> downloadBuckets = new ConcurrentHashMap<>();
+    private static final Map<String, TokenBucket> peerDownloadBuckets = new ConcurrentHashMap<>();
+    private static final Map<String, TokenBucket> peerUploadBuckets = new ConcurrentHashMap<>();
+
+    // Peer kovaları IP başına açılır: bu kadar süre kullanılmayan (ve borcu olmayan) kova silinir
+    private static final long PEER_BUCKET_IDLE_NANOS = TimeUnit.MINUTES.toNanos(2);
+    private static final AtomicLong lastPrune = new AtomicLong(System.nanoTime());
+
+    // --- İNDİRME ---
+
+    /** İndirme başlarken çağrılır; aynı dosya için tekrar çağrılırsa aynı kova döner. */
+    public static TokenBucket openDownload(String fileName) {
+        return downloadBuckets.computeIfAbsent(fileName, k -> new TokenBucket(perDownloadRate));
+    }
+
+    public static void closeDownload(String fileName) {
+        downloadBuckets.remove(fileName);
+    }
+
+    /** Peer'dan bytes kadar veri istemeden önce çağrılır; limit aşılmışsa bekletir. */
+    public static void acquireDownload(TokenBucket download, String peerIp, long bytes) {
+        pruneIdlePeers();
+        TokenBucket peer = peerDownloadBuckets.computeIfAbsent(peerIp, k -> new TokenBucket(perPeerDownloadRate));
+        acquire(bytes, globalDownload, download, peer);
+    }
+
+    // --- YÜKLEME (chunk sunucusu) ---
+
+    public static TokenBucket peerUpload(String peerIp) {
+        pruneIdlePeers();
+        return peerUploadBuckets.computeIfAbsent(peerIp, k -> new TokenBucket(perPeerUploadRate));
+    }
+
+    public static TokenBucket globalUpload() {
+        return globalUpload;
+    }
+
+    /** Bloklayan sunucu (TcpServer) için: bytes kadar gönderim hakkı gelene kadar bekler. */
+    public static void acquireUpload(String peerIp, long bytes) {
+        acquire(bytes, globalUpload, peerUpload(peerIp));
+    }
+
+    // En fazla PEER_BUCKET_IDLE_NANOS'ta bir, onu tetikleyen çağrıda yapılır
+    private static void pruneIdlePeers() {
+        long now = System.nanoTime();
+        long last = lastPrune.get();
+        if (now - last < PEER_BUCKET_IDLE_NANOS || !lastPrune.compareAndSet(last, now)) return;
+        peerDownloadBuckets.values().removeIf(b -> b.isIdle(PEER_BUCKET_IDLE_NANOS));
+        peerUploadBuckets.values().removeIf(b -> b.isIdle(PEER_BUCKET_IDLE_NANOS));
+    }
+
+    private static void acquire(long bytes, TokenBucket... buckets) {
+        long waitNanos = 0;
+        for (TokenBucket bucket : buckets) waitNanos = Math.max(waitNanos, bucket.reserve(bytes));
+        if (waitNanos <= 0) return;
+        try {
+            Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- AYARLAR ---
+
+    public static void configure(Long globalDownloadBps, Long globalUploadBps, Long perDownloadBps,
+                                 Long perPeerDownloadBps, Long perPeerUploadBps) {
+        if (globalDownloadBps != null) globalDownload.setRate(globalDownloadBps);
+        if (globalUploadBps != null) globalUpload.setRate(globalUploadBps);
+        if (perDownloadBps != null) {
+            perDownloadRate = perDownloadBps;
+            downloadBuckets.values().forEach(b -> b.setRate(perDownloadBps));
+        }
+        if (perPeerDownloadBps != null) {
+            perPeerDownloadRate = perPeerDownloadBps;
+            peerDownloadBuckets.values().forEach(b -> b.setRate(perPeerDownloadBps));
+        }
+        if (perPeerUploadBps != null) {
+            perPeerUploadRate = perPeerUploadBps;
+            peerUploadBuckets.values().forEach(b -> b.setRate(perPeerUploadBps));
+        }
+    }
+
+    public static Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("globalDownloadBps", globalDownload.getRate());
+        m.put("globalUploadBps", globalUpload.getRate());
+        m.put("perDownloadBps", perDownloadRate);
+        m.put("perPeerDownloadBps", perPeerDownloadRate);
+        m.put("perPeerUploadBps", perPeerUploadRate);
+        m.put("peerBuckets", peerDownloadBuckets.size() + peerUploadBuckets.size());
+        return m;
+    }
+}
@@ -0,0 +1,78 @@
+package com.p2pstream.net.throttle;
+
+/**
+ * Byte/saniye token bucket. rate = 0 sınırsız demektir.
+ * Kova borca girebilir: kapasiteden büyük bir istek (ör. 256 KB chunk) de geçer,
+ * sadece borç ödenene kadar beklenir. Böylece uzun vadede hız tam rate'e oturur.
+ */
+public final class TokenBucket {
+
+    private static final long MIN_BURST = 16 * 1024;
+
+    private long ratePerSec;
+    private long capacity;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+    private long lastUse = lastRefill;
+
+    public TokenBucket(long ratePerSec) {
+        setRate(ratePerSec);
+        this.tokens = capacity;
+    }
+
+    public synchronized void setRate(long ratePerSec) {
+        refill();
+        this.ratePerSec = Math.max(0, ratePerSec);
+        this.capacity = Math.max(this.ratePerSec / 4, MIN_BURST);
+        if (tokens > capacity) tokens = capacity;
+    }
+
+    public synchronized long getRate() {
+        return ratePerSec;
+    }
+
+    public synchronized boolean isUnlimited() {
+        return ratePerSec == 0;
+    }
+
+    /** bytes kadar token ayırır; borç oluştuysa ödenmesi için beklenmesi gereken süreyi (ns) döner. */
+    public synchronized long reserve(long bytes) {
+        if (ratePerSec == 0) return 0;
+        refill();
+        lastUse = lastRefill;
+        tokens -= bytes;
+        if (tokens >= 0) return 0;
+        return (long) (-tokens * 1_000_000_000L / ratePerSec);
+    }
+
+    /** Beklemeden harcanabilecek token miktarı (non-blocking kullanıcılar için). */
+    public synchronized long available() {
+        if (ratePerSec == 0) return Long.MAX_VALUE;
+        refill();
+        return (long) Math.max(0, tokens);
+    }
+
+    public synchronized void consume(long bytes) {
+        if (ratePerSec == 0) return;
+        refill();
+        lastUse = lastRefill;
+        tokens -= bytes;
+    }
+
+    /**
+     * idleNanos boyunca kullanılmadı ve borcu yok (dolu): silinip yerine yeni kova açılsa
+     * davranış aynı olur.
+     */
+    public synchronized boolean isIdle(long idleNanos) {
+        refill();
+        return lastRefill - lastUse >= idleNanos && (ratePerSec == 0 || tokens >= capacity);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        if (ratePerSec > 0) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * ratePerSec / 1_000_000_000.0);
+        }
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,73 @@
+package com.p2pstream.net.udp;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * İstek tarafında fileHash -> dosyayı ilan eden peer'lar (indirme kaynakları). Yeni arama listeyi
+ * silmez: aynı hash için gelen sahipler birleştirilir, her sahip son ilanından TTL sonra düşer.
+ * Böylece başka bir aramanın sürmesi veya yeni arama başlaması indirme kaynaklarını bozmaz.
+ */
+public final class FileOwnerCache {
+
+    private final long ttlNanos;
+    private final Map<String, Map<String, Long>> owners = new HashMap<>(); // hash -> ip -> son ilan
+    private long lastSweep = System.nanoTime();
+    private long expired = 0;
+
+    public FileOwnerCache(long ttlMs) {
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+    }
+
+    public synchronized void add(String fileHash, String ip) {
+        long now = System.nanoTime();
+        owners.computeIfAbsent(fileHash, k -> new HashMap<>()).put(ip, now);
+        if (now - lastSweep >= ttlNanos) sweep(now);
+    }
+
+    /** TTL içinde ilan etmiş sahipler; dönen küme çağırana aittir. */
+    public synchronized Set<String> owners(String fileHash) {
+        Map<String, Long> seen = owners.get(fileHash);
+        Set<String> live = new HashSet<>();
+        if (seen == null) return live;
+        long now = System.nanoTime();
+        for (Iterator<Map.Entry<String, Long>> it = seen.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<String, Long> e = it.next();
+            if (now - e.getValue() >= ttlNanos) {
+                it.remove();
+                expired++;
+            } else {
+                live.add(e.getKey());
+            }
+        }
+        if (seen.isEmpty()) owners.remove(fileHash);
+        return live;
+    }
+
+    // Hiç indirilmeyen hash'ler de birikmesin
+    private void sweep(long now) {
+        lastSweep = now;
+        for (Iterator<Map<String, Long>> it = owners.values().iterator(); it.hasNext(); ) {
+            Map<String, Long> seen = it.next();
+            int before = seen.size();
+            seen.values().removeIf(t -> now - t >= ttlNanos);
+            expired += before - seen.size();
+            if (seen.isEmpty()) it.remove();
+        }
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        int total = 0;
+        for (Map<String, Long> seen : owners.values()) total += seen.size();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("files", owners.size());
+        stats.put("owners", total);
+        stats.put("expired", expired);
+        return stats;
+    }
+}
@@ -3,25 +3,40 @@ package com.p2pstream.net.udp;
 import com.p2pstream.HeadlessPeer;
 import com.p2pstream.model.Constants;
 import com.p2pstream.model.MessageType;
+import com.p2pstream.model.PeerInfo;
 import com.p2pstream.model.VideoMetadata;
 import com.p2pstream.service.FileService;
 import com.p2pstream.service.PacketCodec;
 
 import java.net.DatagramPacket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 public class MyUdpHandler implements UdpPacketHandler {
 
     private final UdpSender udpSender;
     private final FileService fileService;
-    private final Set<UUID> seenMessages = Collections.newSetFromMap(new ConcurrentHashMap<>());
-    private final Set<String> knownPeers = ConcurrentHashMap.newKeySet();
+    // Sınırlı ve zaman pencereli; uzun süre çalışan peer'da sonsuza kadar büyümez
+    private final SeenMessageCache seenMessages = new SeenMessageCache(Constants.SEEN_CACHE_SLOTS, Constants.SEEN_WINDOW_MS);
+    // Komşular: heartbeat ile canlılık/RTT takibi, sessiz kalanlar atılır
+    private final PeerTable peerTable;
+    // Komşuların içerik özetleri: aramalar sadece "belki var" diyen komşulara gider
+    private final SummaryRouter summaries;
+    // Popüler sorgular her seferinde yeniden aranıp kodlanmasın: sorgu -> hazır cevap payload'ları
+    private final QueryReplyCache replyCache = new QueryReplyCache(Constants.QUERY_CACHE_ENTRIES, Constants.QUERY_CACHE_TTL_MS);
+    private final ScheduledExecutorService heartbeats = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "udp-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
     private final String myPeerId;
     private final String myIp;
     private final int myPort;
@@ -32,6 +47,27 @@ public class MyUdpHandler implements UdpPacketHandler {
         this.myPeerId = myPeerId;
         this.myIp = myIp;
         this.myPort = myPort;
+        this.peerTable = new PeerTable(myIp);
+        this.summaries = new SummaryRouter(fileService);
+
+        heartbeats.scheduleAtFixedRate(this::heartbeatTick, Constants.HEARTBEAT_INTERVAL_MS,
+                Constants.HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+
+        // Kütüphaneye sonradan eklenen dosyalar (biten indirme, kopyalanan dosya) hemen duyurulur
+        fileService.addListener(this::announceFile);
+        fileService.addListener(new FileService.Listener() {
+            @Override public void onFileAdded(VideoMetadata meta) { replyCache.invalidate(); }
+            @Override public void onFileRemoved(VideoMetadata meta) { replyCache.invalidate(); }
+        });
+    }
+
+    // HELLO, heartbeat ve özetler hariç her mesaj bir kere işlenir; daha önce görülen flood'lar kopyalanmadan elenir
+    @Override
+    public boolean accept(PacketView view) {
+        MessageType type = view.messageType();
+        if (type == MessageType.HELLO || type == MessageType.HEARTBEAT || type == MessageType.HEARTBEAT_ACK
+                || type == MessageType.SUMMARY) return true;
+        return !seenMessages.contains(view.messageIdMsb(), view.messageIdLsb());
     }
 
     // --- 1. HELLO (Doğrudan Komşu) ---
@@ -39,7 +75,7 @@ public class MyUdpHandler implements UdpPacketHandler {
     public void handleHello(Packet packet, InetAddress sender, int senderPort) {
         System.out.println("👋 HELLO alındı: " + packet.myIp);
         HeadlessPeer.broadcastLog("👋 Yeni Peer Bağlandı (Local): " + packet.myIp);
-        knownPeers.add(packet.myIp);
+        observePeer(packet.myIp);
 
         // A. Dedikodu (Gossip) Başlat: Diğer Subnettekilere haber ver
         int forwardTtl = packet.ttl - 1;
@@ -59,7 +95,7 @@ public class MyUdpHandler implements UdpPacketHandler {
 
         // Payload içinde yeni gelen Peer'ın asıl IP'si yazar (Örn: 172.30.0.10)
         String newPeerIp = new String(packet.data, StandardCharsets.UTF_8);
-        knownPeers.add(newPeerIp);
+        observePeer(newPeerIp);
 
         System.out.println("🌍 DISCOVER alındı. Yeni Peer: " + newPeerIp);
 
@@ -80,24 +116,30 @@ public class MyUdpHandler implements UdpPacketHandler {
     public void handleSearch(Packet packet, InetAddress sender, int senderPort) {
         if (!seenMessages.add(packet.messageId)) return;
         String query = new String(packet.data, StandardCharsets.UTF_8);
+        observePeer(packet.myIp);
 
         System.out.println("🔍 Dosya Aranıyor: '" + query + "'");
         HeadlessPeer.broadcastLog("🔍 Dosya isteği: '" + query + "' <- " + packet.myIp);
 
-        // A. Dosya Bende Var mı?
-        List<VideoMetadata> results = fileService.searchFiles(query);
-        for (VideoMetadata meta : results) {
-            System.out.println("✅ Dosya bende var! Cevap dönülüyor: " + meta.getFileName());
-            String payload = this.myIp + ":" + this.myPort + ":" + meta.getFileHash() + ":" + meta.getFileName() + ":" + meta.getFileSize();
-
-            // Cevabı Flood ile gönder
-            Packet replyFlood = Packet.simpleText(MessageType.SEARCH_REPLY, this.myIp, this.myPort, 2, payload);
-            seenMessages.add(replyFlood.messageId);
-            floodToNetwork(replyFlood);
+        // A. Dosya Bende Var mı? (tüm sonuçlar birkaç datagram'a paketlenip flood edilir)
+        List<byte[]> replies = replyCache.get(query);
+        if (replies == null) {
+            long generation = replyCache.generation();
+            List<VideoMetadata> results = fileService.searchFiles(query);
+            replies = results.isEmpty() ? List.of()
+                    : ReplyBatch.encode(this.myIp, this.myPort, results, Constants.MAX_UDP_PACKET_BYTES);
+            replyCache.put(query, generation, replies);
+        }
+        if (!replies.isEmpty()) {
+            System.out.println("✅ Eşleşen dosyalar bende var! Cevap dönülüyor (" + replies.size() + " paket).");
+            floodPayloads(MessageType.SEARCH_REPLY, replies);
         }
 
-        // B. Başkasına Sor (Forward)
-        forwardPacket(packet);
+        // B. Başkasına Sor (Forward): özeti eşleşen komşulara
+        int forwardTtl = packet.ttl - 1;
+        if (forwardTtl > 0) {
+            routeSearch(new Packet(packet.messageId, packet.messageType, packet.myIp, packet.myPort, forwardTtl, packet.data), query);
+        }
     }
 
     @Override
@@ -111,17 +153,32 @@ public class MyUdpHandler implements UdpPacketHandler {
         if (!seenMessages.add(packet.messageId)) return;
 
         try {
-            String payload = new String(packet.data, StandardCharsets.UTF_8);
-            String[] parts = payload.split(":");
-            if (parts.length >= 5) {
-                String sourceIp = parts[0];
-                String hash = parts[2];
-                String fileName = parts[3];
-                long size = Long.parseLong(parts[4]);
-
-                System.out.println("✅ SONUÇ ALINDI: " + fileName + " [" + sourceIp + "]");
-                HeadlessPeer.broadcastLog("✅ Sonuç: " + fileName + " (" + sourceIp + ")");
-                HeadlessPeer.broadcastToWeb(webEventType, fileName, size, hash, sourceIp);
+            if (ReplyBatch.isBatch(packet.data)) {
+                // Yeni format: tek datagram'da çok dosya, web'e tek seferde gider
+                List<ReplyBatch.Entry> entries = ReplyBatch.decode(packet.data);
+                if (!entries.isEmpty()) {
+                    String sourceIp = entries.get(0).sourceIp;
+                    observePeer(sourceIp);
+                    System.out.println("✅ SONUÇ ALINDI: " + entries.size() + " dosya [" + sourceIp + "]");
+                    HeadlessPeer.broadcastLog("✅ Sonuç: " + entries.size() + " dosya (" + sourceIp + ")");
+                    HeadlessPeer.broadcastToWeb(webEventType, entries);
+                }
+            } else {
+                // Eski text format: ip:port:hash:fileName:size[:merkleRoot]
+                String payload = new String(packet.data, StandardCharsets.UTF_8);
+                String[] parts = payload.split(":");
+                if (parts.length >= 5) {
+                    String sourceIp = parts[0];
+                    observePeer(sourceIp);
+                    String hash = parts[2];
+                    String fileName = parts[3];
+                    long size = Long.parseLong(parts[4]);
+                    String merkleRoot = parts.length >= 6 ? parts[5] : null;
+
+                    System.out.println("✅ SONUÇ ALINDI: " + fileName + " [" + sourceIp + "]");
+                    HeadlessPeer.broadcastLog("✅ Sonuç: " + fileName + " (" + sourceIp + ")");
+                    HeadlessPeer.broadcastToWeb(webEventType, fileName, size, hash, sourceIp, merkleRoot);
+                }
             }
         } catch (Exception e) { e.printStackTrace(); }
 
@@ -129,6 +186,20 @@ public class MyUdpHandler implements UdpPacketHandler {
         forwardPacket(packet);
     }
 
+    // Dosya listesini MAX_UDP_PACKET_BYTES'a sığan binary batch'lere bölüp her birini flood et
+    private void floodReplies(MessageType type, List<VideoMetadata> files) {
+        floodPayloads(type, ReplyBatch.encode(this.myIp, this.myPort, files, Constants.MAX_UDP_PACKET_BYTES));
+    }
+
+    // Her gönderim yeni messageId alır: aynı cevap tekrar istendiğinde komşuların seen cache'ine takılmaz
+    private void floodPayloads(MessageType type, List<byte[]> payloads) {
+        for (byte[] payload : payloads) {
+            Packet p = new Packet(type, this.myIp, this.myPort, 2, payload);
+            seenMessages.add(p.messageId);
+            floodToNetwork(p);
+        }
+    }
+
     private void forwardPacket(Packet packet) {
         int forwardTtl = packet.ttl - 1;
         if (forwardTtl > 0) {
@@ -137,31 +208,149 @@ public class MyUdpHandler implements UdpPacketHandler {
         }
     }
 
+    /** Web arayüzünden başlatılan arama: özeti eşleşen komşulara unicast, yönlendirilemiyorsa flood. */
+    public void startSearch(String query) {
+        Packet p = Packet.simpleText(MessageType.SEARCH, this.myIp, this.myPort, Constants.ttl, query);
+        routeSearch(p, query);
+    }
+
+    // Sorgu özetlere göre yönlendirilebiliyorsa (>= 3 karakter ve canlı komşu var) sadece eşleşen
+    // komşulara TTL=1 ile gider: özetler her komşunun kendi dosyalarını kapsadığı için tekrar yayılmaz.
+    // Aksi halde eski davranış: canlı komşulara unicast + subnet broadcast.
+    private void routeSearch(Packet packet, String query) {
+        long[] queryHashes = SummaryRouter.queryHashes(query);
+        List<PeerInfo> live = peerTable.livePeers(packet.myIp);
+        if (queryHashes == null || live.isEmpty()) {
+            summaries.countFlooded();
+            floodToNetwork(packet);
+            return;
+        }
+
+        List<InetSocketAddress> targets = new ArrayList<>(live.size());
+        for (PeerInfo peer : live) {
+            if (summaries.mightMatch(peer.getIp(), queryHashes)) targets.add(peer.getAddress());
+        }
+        summaries.countRouted(live.size() - targets.size());
+        if (targets.isEmpty()) return;
+        try {
+            Packet routed = new Packet(packet.messageId, packet.messageType, packet.myIp, packet.myPort, 1, packet.data);
+            udpSender.sendToAll(PacketCodec.encodeShared(routed), targets);
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    public Map<String, Object> getSeenCacheStats() {
+        return seenMessages.snapshot();
+    }
+
+    public PeerTable getPeerTable() {
+        return peerTable;
+    }
+
+    public Map<String, Object> getReplyCacheStats() {
+        return replyCache.snapshot();
+    }
+
+    public Map<String, Object> getSummaryStats() {
+        return summaries.snapshot();
+    }
+
+    // --- ÖZETLER (SUMMARY) ---
+
+    // Peer'ı tabloya işler; ilk kez görülüyorsa ona tam özetimizi gönderir
+    private PeerInfo observePeer(String ip) {
+        PeerInfo peer = peerTable.observe(ip);
+        if (peer != null && summaries.markSynced(ip)) sendSummary(summaries.encodeFull(), List.of(peer.getAddress()));
+        return peer;
+    }
+
+    private void sendSummary(byte[] payload, List<InetSocketAddress> targets) {
+        try {
+            Packet p = new Packet(MessageType.SUMMARY, this.myIp, this.myPort, 1, payload);
+            udpSender.sendToAll(PacketCodec.encodeShared(p), targets);
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    @Override
+    public void handleSummary(Packet packet, InetAddress sender, int senderPort) {
+        PeerInfo peer = observePeer(packet.myIp);
+        if (peer == null) return;
+        try {
+            // Araya kaçan DELTA'da FULL isteği, gelen isteğe FULL
+            byte[] reply = summaries.onSummary(packet.myIp, packet.data);
+            if (reply != null) sendSummary(reply, List.of(peer.getAddress()));
+        } catch (Exception e) {
+            System.err.println("⚠️ Geçersiz özet (" + packet.myIp + "): " + e.getMessage());
+        }
+    }
+
+    // --- HEARTBEAT ---
+
+    // Payload: gönderim anı (nanoTime, 8 byte); karşı taraf aynen geri yollar, RTT buradan hesaplanır
+    private void heartbeatTick() {
+        try {
+            peerTable.evictDead(peer -> {
+                System.out.println("💤 Peer düştü: " + peer.getIp());
+                HeadlessPeer.broadcastLog("💤 Peer timed out: " + peer.getIp());
+                summaries.forget(peer.getIp());
+            });
+            if (peerTable.size() == 0) return;
+
+            byte[] payload = ByteBuffer.allocate(8).putLong(System.nanoTime()).array();
+            Packet hb = new Packet(MessageType.HEARTBEAT, this.myIp, this.myPort, 1, payload);
+            List<InetSocketAddress> targets = new ArrayList<>(peerTable.size());
+            for (PeerInfo peer : peerTable.all()) targets.add(peer.getAddress());
+            udpSender.sendToAll(PacketCodec.encodeShared(hb), targets);
+
+            // Özet değiştiyse: yeni bitler (DELTA) veya yeniden kurulan filtre (FULL)
+            byte[] summary = summaries.tick();
+            if (summary != null) sendSummary(summary, targets);
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    @Override
+    public void handleHeartbeat(Packet packet, InetAddress sender, int senderPort) {
+        PeerInfo peer = observePeer(packet.myIp);
+        if (peer == null) return;
+        try {
+            Packet ack = new Packet(MessageType.HEARTBEAT_ACK, this.myIp, this.myPort, 1, packet.data);
+            udpSender.sendToAll(PacketCodec.encodeShared(ack), List.of(peer.getAddress()));
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
+    @Override
+    public void handleHeartbeatAck(Packet packet, InetAddress sender, int senderPort) {
+        PeerInfo peer = peerTable.observe(packet.myIp);
+        if (peer == null || packet.data.length != 8) return;
+        long rtt = System.nanoTime() - ByteBuffer.wrap(packet.data).getLong();
+        if (rtt >= 0) peer.recordRtt(rtt);
+    }
+
     private void floodToNetwork(Packet packet) {
         try {
-            byte[] data = PacketCodec.encode(packet);
+            ByteBuffer data = PacketCodec.encodeShared(packet);
 
-            // 1. Unicast (Bildiğim herkese)
-            for (String targetIp : knownPeers) {
-                if (!targetIp.equals(this.myIp) && !targetIp.equals(packet.myIp)) {
-                    udpSender.send(data, InetAddress.getByName(targetIp), Constants.UDP_PORT);
-                }
-            }
+            // 1. Unicast (sadece canlı komşulara)
+            List<PeerInfo> live = peerTable.livePeers(packet.myIp);
+            List<InetSocketAddress> targets = new ArrayList<>(live.size());
+            for (PeerInfo peer : live) targets.add(peer.getAddress());
+            udpSender.sendToAll(data, targets);
             // 2. Broadcast (Kendi mahallene)
             udpSender.sendToAllLocalSubnets(data, Constants.UDP_PORT);
 
         } catch (Exception e) { e.printStackTrace(); }
     }
 
+    private void announceFile(VideoMetadata meta) {
+        try {
+            System.out.println("📣 Yeni dosya duyuruluyor: " + meta.getFileName());
+            floodReplies(MessageType.DISCOVER_REPLY, List.of(meta));
+        } catch (Exception e) { e.printStackTrace(); }
+    }
+
     private void sendMyFileList(String targetIpForLog, MessageType type) {
         try {
             List<VideoMetadata> myFiles = fileService.searchFiles("");
-            for (VideoMetadata meta : myFiles) {
-                String payload = this.myIp + ":" + this.myPort + ":" + meta.getFileHash() + ":" + meta.getFileName() + ":" + meta.getFileSize();
-
-                Packet p = Packet.simpleText(type, this.myIp, this.myPort, 2, payload);
-                floodToNetwork(p);
-            }
+            if (!myFiles.isEmpty()) floodReplies(type, myFiles);
         } catch (Exception e) { e.printStackTrace(); }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,137 @@
+package com.p2pstream.net.udp;
+
+import com.p2pstream.model.Constants;
+import com.p2pstream.model.MessageType;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Alınan datagram üzerinde kopyasız, yeniden kullanılabilir okuma görünümü (flyweight).
+ * wrap() sadece başlığı doğrular ve alanların yerini hatırlar; payload kopyalanmaz,
+ * Packet nesnesi ancak toPacket() çağrılırsa oluşturulur.
+ *
+ * Format: [msb:8][lsb:8][type:4][ipLen:4][ip][port:4][ttl:4][dataLen:4][data]
+ * Bir görünüm tek bir thread'e aittir.
+ */
+public final class PacketView {
+
+    private static final MessageType[] TYPES = MessageType.values();
+    private static final int MAX_IP_BYTES = 4096;
+
+    private ByteBuffer buf;
+    private long msb;
+    private long lsb;
+    private MessageType type;
+    private int ipOffset;
+    private int ipLength;
+    private int port;
+    private int ttl;
+    private int dataOffset;
+    private int dataLength;
+
+    /** buf'un position..limit aralığını paket olarak okur; tamponun pozisyonu değişmez. */
+    public PacketView wrap(ByteBuffer buf) throws IOException {
+        this.buf = buf;
+        int p = buf.position();
+        int end = buf.limit();
+        if (end - p < 24) throw new IOException("Packet too short");
+
+        msb = buf.getLong(p);
+        lsb = buf.getLong(p + 8);
+        int typeOrd = buf.getInt(p + 16);
+        if (typeOrd < 0 || typeOrd >= TYPES.length) throw new IOException("Unknown type=" + typeOrd);
+        type = TYPES[typeOrd];
+
+        ipLength = buf.getInt(p + 20);
+        if (ipLength < 0 || ipLength > MAX_IP_BYTES) throw new IOException("Invalid string len=" + ipLength);
+        ipOffset = p + 24;
+        int q = ipOffset + ipLength;
+        if (end - q < 12) throw new IOException("Packet too short");
+
+        port = buf.getInt(q);
+        ttl = buf.getInt(q + 4);
+        dataLength = buf.getInt(q + 8);
+        if (dataLength < 0 || dataLength > Constants.MAX_UDP_PACKET_BYTES) {
+            throw new IOException("Invalid dataLen=" + dataLength);
+        }
+        dataOffset = q + 12;
+        if (end - dataOffset < dataLength) throw new IOException("Truncated data");
+        return this;
+    }
+
+    // --- ALANLAR ---
+
+    public long messageIdMsb() { return msb; }
+    public long messageIdLsb() { return lsb; }
+    public MessageType messageType() { return type; }
+    public int myPort() { return port; }
+    public int ttl() { return ttl; }
+    public int dataOffset() { return dataOffset; }
+    public int dataLength() { return dataLength; }
+    public ByteBuffer buffer() { return buf; }
+
+    /** Gönderenin IP'si; aynı byte dizisi için hep aynı String döner (IpCache). */
+    public String myIp() {
+        return IpCache.get(buf, ipOffset, ipLength);
+    }
+
+    public UUID messageId() {
+        return new UUID(msb, lsb);
+    }
+
+    /** Payload'ın salt okunur dilimi (kopya yok). */
+    public ByteBuffer data() {
+        ByteBuffer slice = buf.duplicate();
+        slice.limit(dataOffset + dataLength).position(dataOffset);
+        return slice.slice().asReadOnlyBuffer();
+    }
+
+    public String dataAsString() {
+        return StandardCharsets.UTF_8.decode(data()).toString();
+    }
+
+    /** Handler'lara verilecek kalıcı Packet; payload burada kopyalanır. */
+    public Packet toPacket() {
+        byte[] data = new byte[dataLength];
+        buf.get(dataOffset, data);
+        return new Packet(messageId(), type, myIp(), port, ttl, data);
+    }
+
+    /**
+     * Küçük, kilitsiz IP string önbelleği: byte'ları aynı olan IP için yeni String üretilmez.
+     * Çakışmada eski giriş ezilir; sonuç her zaman doğrudur, sadece önbellek isabeti kaçabilir.
+     */
+    static final class IpCache {
+        private static final int SLOTS = 1024; // 2'nin kuvveti
+        private static final String[] cache = new String[SLOTS];
+
+        private IpCache() {}
+
+        static String get(ByteBuffer buf, int offset, int length) {
+            int h = 1;
+            for (int i = 0; i < length; i++) h = 31 * h + buf.get(offset + i);
+            int slot = (h ^ (h >>> 16)) & (SLOTS - 1);
+
+            String cached = cache[slot];
+            if (cached != null && matches(cached, buf, offset, length)) return cached;
+
+            byte[] bytes = new byte[length];
+            buf.get(offset, bytes);
+            String ip = new String(bytes, StandardCharsets.UTF_8);
+            cache[slot] = ip;
+            return ip;
+        }
+
+        // IP'ler ASCII: karakter karakter byte karşılaştırması yeterli
+        private static boolean matches(String s, ByteBuffer buf, int offset, int length) {
+            if (s.length() != length) return false;
+            for (int i = 0; i < length; i++) {
+                if (s.charAt(i) != buf.get(offset + i)) return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.p2pstream.net.udp;
+
+import com.p2pstream.model.Constants;
+import com.p2pstream.model.PeerInfo;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bilinen komşular: IP -> PeerInfo. Bir peer'dan herhangi bir paket (veya heartbeat cevabı)
+ * geldikçe lastSeen yenilenir; PEER_TIMEOUT_MS boyunca ses çıkarmayan peer "canlı" sayılmaz
+ * ve PEER_EVICT_MS sonunda tablodan atılır. Flood ve indirme sadece canlı peer'ları kullanır.
+ */
+public final class PeerTable {
+
+    private final Map<String, PeerInfo> peers = new ConcurrentHashMap<>();
+    private final String myIp;
+    private final long timeoutNanos;
+    private final long evictNanos;
+
+    public PeerTable(String myIp) {
+        this(myIp, Constants.PEER_TIMEOUT_MS, Constants.PEER_EVICT_MS);
+    }
+
+    public PeerTable(String myIp, long timeoutMs, long evictMs) {
+        this.myIp = myIp;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.evictNanos = TimeUnit.MILLISECONDS.toNanos(evictMs);
+    }
+
+    /**
+     * Peer'ı ekler (yoksa) ve canlı olarak işaretler. Kendi IP'miz tabloya girmez. IP paket
+     * içeriğinden geldiği için güvenilmez: sadece sayısal IPv4 kabul edilir (UDP thread'inde DNS yok).
+     */
+    public PeerInfo observe(String ip) {
+        if (ip == null || ip.isEmpty() || ip.equals(myIp)) return null;
+        PeerInfo existing = peers.get(ip);
+        if (existing != null) {
+            existing.touch();
+            return existing;
+        }
+        InetAddress address = parseIpv4(ip);
+        if (address == null) return null;
+        return peers.computeIfAbsent(ip, k -> new PeerInfo(k, address, Constants.UDP_PORT));
+    }
+
+    // Kanonik "a.b.c.d" değilse null; getByAddress ad çözümlemesi yapmaz
+    static InetAddress parseIpv4(String ip) {
+        String[] parts = ip.split("\\.", -1);
+        if (parts.length != 4) return null;
+        byte[] bytes = new byte[4];
+        for (int i = 0; i < 4; i++) {
+            String part = parts[i];
+            if (part.isEmpty() || part.length() > 3 || (part.length() > 1 && part.charAt(0) == '0')) return null;
+            int value = 0;
+            for (int j = 0; j < part.length(); j++) {
+                char c = part.charAt(j);
+                if (c < '0' || c > '9') return null;
+                value = value * 10 + (c - '0');
+            }
+            if (value > 255) return null;
+            bytes[i] = (byte) value;
+        }
+        try {
+            return InetAddress.getByAddress(bytes);
+        } catch (UnknownHostException e) {
+            return null; // 4 byte'lık adreste olmaz
+        }
+    }
+
+    public PeerInfo get(String ip) {
+        return peers.get(ip);
+    }
+
+    public boolean isAlive(String ip) {
+        PeerInfo peer = peers.get(ip);
+        return peer != null && isAlive(peer, System.nanoTime());
+    }
+
+    private boolean isAlive(PeerInfo peer, long now) {
+        return now - peer.getLastSeenNanos() < timeoutNanos;
+    }
+
+    /** Canlı peer'lar; exclude'daki IP'ler (ör. paketin kaynağı) atlanır. */
+    public List<PeerInfo> livePeers(String exclude) {
+        long now = System.nanoTime();
+        List<PeerInfo> live = new ArrayList<>(peers.size());
+        for (PeerInfo peer : peers.values()) {
+            if (isAlive(peer, now) && !peer.getIp().equals(exclude)) live.add(peer);
+        }
+        return live;
+    }
+
+    /** Heartbeat gönderilecekler: henüz atılmamış tüm peer'lar (canlı olmayanlar da geri dönebilir). */
+    public Collection<PeerInfo> all() {
+        return peers.values();
+    }
+
+    /** Uzun süredir sessiz peer'ları tablodan atar. */
+    public int evictDead(Consumer<PeerInfo> onEvict) {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (PeerInfo peer : peers.values()) {
+            if (now - peer.getLastSeenNanos() >= evictNanos && peers.remove(peer.getIp(), peer)) {
+                evicted++;
+                if (onEvict != null) onEvict.accept(peer);
+            }
+        }
+        return evicted;
+    }
+
+    public int size() {
+        return peers.size();
+    }
+
+    public List<Map<String, Object>> snapshot() {
+        long now = System.nanoTime();
+        List<Map<String, Object>> list = new ArrayList<>(peers.size());
+        for (PeerInfo peer : peers.values()) {
+            Map<String, Object> p = new LinkedHashMap<>();
+            p.put("ip", peer.getIp());
+            p.put("alive", isAlive(peer, now));
+            p.put("lastSeenMsAgo", (now - peer.getLastSeenNanos()) / 1_000_000);
+            p.put("rttMs", peer.getRttMillis() < 0 ? null : Math.round(peer.getRttMillis() * 100) / 100.0);
+            list.add(p);
+        }
+        return list;
+    }
+}
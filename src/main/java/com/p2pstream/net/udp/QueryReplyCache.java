@@ -0,0 +1,93 @@
+package com.p2pstream.net.udp;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cevap veren taraf için sorgu -> kodlanmış SEARCH_REPLY payload'ları (ReplyBatch) önbelleği.
+ * LRU + TTL; boş sonuç da saklanır (dosyası olmayan peer'lar popüler sorguyu tekrar aramasın).
+ * Kütüphane değişince tamamen temizlenir; generation, temizlikten önce başlamış bir aramanın
+ * eski sonucunu sonradan yazmasını engeller.
+ */
+final class QueryReplyCache {
+
+    private static final class Entry {
+        final List<byte[]> payloads;
+        final long expiresAt;
+
+        Entry(List<byte[]> payloads, long expiresAt) {
+            this.payloads = payloads;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private final int capacity;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, Entry> entries;
+    private long generation = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+    private long invalidations = 0;
+
+    QueryReplyCache(int capacity, long ttlMs) {
+        this.capacity = capacity;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= QueryReplyCache.this.capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    static String key(String query) {
+        return query == null ? "" : query.toLowerCase(Locale.ROOT);
+    }
+
+    /** Geçerli kayıt yoksa null. */
+    synchronized List<byte[]> get(String query) {
+        String key = key(query);
+        Entry e = entries.get(key);
+        if (e != null && System.nanoTime() - e.expiresAt < 0) {
+            hits++;
+            return e.payloads;
+        }
+        if (e != null) entries.remove(key);
+        misses++;
+        return null;
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    /** Arama başlarken alınan generation hâlâ geçerliyse saklar. */
+    synchronized void put(String query, long seenGeneration, List<byte[]> payloads) {
+        if (seenGeneration != generation) return;
+        entries.put(key(query), new Entry(List.copyOf(payloads), System.nanoTime() + ttlNanos));
+    }
+
+    synchronized void invalidate() {
+        generation++;
+        if (!entries.isEmpty()) invalidations++;
+        entries.clear();
+    }
+
+    synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.size());
+        stats.put("capacity", capacity);
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("evictions", evictions);
+        stats.put("invalidations", invalidations);
+        return stats;
+    }
+}
@@ -0,0 +1,148 @@
+package com.p2pstream.net.udp;
+
+import com.p2pstream.model.VideoMetadata;
+import com.p2pstream.service.MerkleTree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * DISCOVER_REPLY / SEARCH_REPLY için çok dosyalı binary payload. Bir datagram'a sığdığı kadar
+ * dosya girer; eski "ip:port:hash:isim:boyut" text cevabı MARKER ile ayırt edilir (text cevap
+ * bir IP rakamıyla başlar).
+ *
+ * Format: [MARKER:1][VERSION:1][ipLen:1][ip][port:4][count:2]
+ *         { [hash:32][size:8][nameLen:2][name UTF-8][hasRoot:1][merkleRoot:32]? }*
+ */
+public final class ReplyBatch {
+    private ReplyBatch() {}
+
+    public static final byte MARKER = (byte) 0xFE;
+    public static final byte VERSION = 1;
+
+    private static final int HASH_BYTES = 32;
+    private static final int MAX_NAME_BYTES = 1024;
+
+    public static final class Entry {
+        public final String sourceIp;
+        public final int sourcePort;
+        public final String fileHash;
+        public final String fileName;
+        public final long fileSize;
+        public final String merkleRoot;
+
+        public Entry(String sourceIp, int sourcePort, String fileHash, String fileName, long fileSize, String merkleRoot) {
+            this.sourceIp = sourceIp;
+            this.sourcePort = sourcePort;
+            this.fileHash = fileHash;
+            this.fileName = fileName;
+            this.fileSize = fileSize;
+            this.merkleRoot = merkleRoot;
+        }
+    }
+
+    public static boolean isBatch(byte[] data) {
+        return data.length > 0 && data[0] == MARKER;
+    }
+
+    /** Dosyaları her biri en fazla maxBytes olan payload'lara böler. */
+    public static List<byte[]> encode(String ip, int port, List<VideoMetadata> files, int maxBytes) {
+        byte[] ipBytes = ip.getBytes(StandardCharsets.UTF_8);
+        int headerBytes = 3 + ipBytes.length + 4 + 2;
+
+        List<byte[]> payloads = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocate(maxBytes);
+        int count = 0;
+        for (VideoMetadata meta : files) {
+            byte[] name = meta.getFileName().getBytes(StandardCharsets.UTF_8);
+            if (name.length > MAX_NAME_BYTES) continue;
+            byte[] hash = fromHex(meta.getFileHash());
+            byte[] root = meta.getMerkleRoot() == null ? null : fromHex(meta.getMerkleRoot());
+            if (hash == null) continue;
+            int entryBytes = HASH_BYTES + 8 + 2 + name.length + 1 + (root == null ? 0 : HASH_BYTES);
+            if (headerBytes + entryBytes > maxBytes) continue;
+
+            if (count > 0 && buf.remaining() < entryBytes) {
+                payloads.add(finish(buf, count));
+                count = 0;
+            }
+            if (count == 0) {
+                buf.clear();
+                buf.put(MARKER).put(VERSION).put((byte) ipBytes.length).put(ipBytes).putInt(port).putShort((short) 0);
+            }
+            buf.put(hash).putLong(meta.getFileSize()).putShort((short) name.length).put(name);
+            if (root == null) {
+                buf.put((byte) 0);
+            } else {
+                buf.put((byte) 1).put(root);
+            }
+            count++;
+            if (count == 0xFFFF) {
+                payloads.add(finish(buf, count));
+                count = 0;
+            }
+        }
+        if (count > 0) payloads.add(finish(buf, count));
+        return payloads;
+    }
+
+    private static byte[] finish(ByteBuffer buf, int count) {
+        int countPos = 3 + (buf.get(2) & 0xFF) + 4;
+        buf.putShort(countPos, (short) count);
+        byte[] out = new byte[buf.position()];
+        buf.get(0, out);
+        return out;
+    }
+
+    public static List<Entry> decode(byte[] data) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        try {
+            if (buf.get() != MARKER) throw new IOException("Not a reply batch");
+            byte version = buf.get();
+            if (version != VERSION) throw new IOException("Unsupported version=" + version);
+
+            byte[] ipBytes = new byte[buf.get() & 0xFF];
+            buf.get(ipBytes);
+            String ip = new String(ipBytes, StandardCharsets.UTF_8);
+            int port = buf.getInt();
+            int count = buf.getShort() & 0xFFFF;
+
+            List<Entry> entries = new ArrayList<>(count);
+            byte[] hash = new byte[HASH_BYTES];
+            for (int i = 0; i < count; i++) {
+                buf.get(hash);
+                long size = buf.getLong();
+                int nameLen = buf.getShort() & 0xFFFF;
+                if (nameLen > MAX_NAME_BYTES) throw new IOException("Invalid nameLen=" + nameLen);
+                byte[] name = new byte[nameLen];
+                buf.get(name);
+                String root = null;
+                if (buf.get() != 0) {
+                    byte[] rootBytes = new byte[HASH_BYTES];
+                    buf.get(rootBytes);
+                    root = MerkleTree.toHex(rootBytes);
+                }
+                entries.add(new Entry(ip, port, MerkleTree.toHex(hash), new String(name, StandardCharsets.UTF_8), size, root));
+            }
+            return entries;
+        } catch (RuntimeException e) {
+            throw new IOException("Truncated reply batch", e);
+        }
+    }
+
+    // 64 karakterlik hex SHA-256 -> 32 byte; format dışıysa null
+    private static byte[] fromHex(String hex) {
+        if (hex == null || hex.length() != HASH_BYTES * 2) return null;
+        byte[] out = new byte[HASH_BYTES];
+        for (int i = 0; i < HASH_BYTES; i++) {
+            int hi = Character.digit(hex.charAt(2 * i), 16);
+            int lo = Character.digit(hex.charAt(2 * i + 1), 16);
+            if (hi < 0 || lo < 0) return null;
+            out[i] = (byte) ((hi << 4) | lo);
+        }
+        return out;
+    }
+}
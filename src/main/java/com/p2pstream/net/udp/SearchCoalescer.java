@@ -0,0 +1,84 @@
+package com.p2pstream.net.udp;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * İstek tarafında aynı aramaların birleştirilmesi: bir sorgu SEARCH_COALESCE_MS içinde tekrar
+ * istenirse ağa yeni SEARCH gitmez, ikinci istek devam eden aramaya ortak olur. Sonuç akışı
+ * zaten tüm web istemcilerine gider; sonradan katılan, o ana kadar gelen eşleşmeleri buradan alır.
+ */
+public final class SearchCoalescer {
+
+    private static final class InFlight {
+        final String query;
+        final long startedNanos;
+        final Map<String, ReplyBatch.Entry> results = new LinkedHashMap<>(); // hash@ip -> sonuç
+
+        InFlight(String query, long startedNanos) {
+            this.query = query;
+            this.startedNanos = startedNanos;
+        }
+    }
+
+    private final long windowNanos;
+    private final Map<String, InFlight> inFlight = new LinkedHashMap<>();
+    private long started = 0;
+    private long joined = 0;
+
+    public SearchCoalescer(long windowMs) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMs);
+    }
+
+    /**
+     * Sorguyu başlatır veya devam edene katılır. Çağıran ağa SEARCH göndermeliyse null,
+     * katıldıysa o ana kadar gelen eşleşen sonuçlar döner.
+     */
+    public synchronized List<ReplyBatch.Entry> join(String query) {
+        long now = System.nanoTime();
+        expire(now);
+        String key = query == null ? "" : query.toLowerCase(Locale.ROOT);
+        InFlight search = inFlight.get(key);
+        if (search != null) {
+            joined++;
+            return new ArrayList<>(search.results.values());
+        }
+        inFlight.put(key, new InFlight(key, now));
+        started++;
+        return null;
+    }
+
+    /** Gelen SEARCH_REPLY sonuçlarını, adı sorguyu içeren devam eden aramalara işler. */
+    public synchronized void onResults(List<ReplyBatch.Entry> entries) {
+        expire(System.nanoTime());
+        if (inFlight.isEmpty()) return;
+        for (ReplyBatch.Entry e : entries) {
+            String name = e.fileName.toLowerCase(Locale.ROOT);
+            for (InFlight search : inFlight.values()) {
+                if (name.contains(search.query)) search.results.putIfAbsent(e.fileHash + "@" + e.sourceIp, e);
+            }
+        }
+    }
+
+    private void expire(long now) {
+        // Ekleme sırası = başlama sırası; ilk süresi dolmamış aramada durulabilir
+        Iterator<InFlight> it = inFlight.values().iterator();
+        while (it.hasNext()) {
+            if (now - it.next().startedNanos < windowNanos) break;
+            it.remove();
+        }
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", inFlight.size());
+        stats.put("started", started);
+        stats.put("coalesced", joined);
+        return stats;
+    }
+}
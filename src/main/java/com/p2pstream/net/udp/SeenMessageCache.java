@@ -0,0 +1,129 @@
+package com.p2pstream.net.udp;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Flood edilen mesajların tekrarını engellemek için sınırlı, zaman pencereli "görüldü" kümesi.
+ * İki nesil (current/previous) long anahtarlı open-addressing tablo tutulur; her windowMs'de
+ * bir previous atılır, current previous olur. Bir ID en az windowMs, en fazla 2*windowMs
+ * hatırlanır ve bellek sabittir (2 * slot * 8 byte). current erken dolarsa rotasyon öne
+ * alınır ve sayılır; bu durumda pencere kısalır, kapasite büyütülmelidir.
+ */
+public final class SeenMessageCache {
+
+    private static final long EMPTY = 0L;
+    private static final double MAX_LOAD = 0.5;
+
+    private final int slots;
+    private final int maxEntries;
+    private final long windowNanos;
+
+    private long[] current;
+    private long[] previous;
+    private int currentSize = 0;
+    private long currentStartedAt;
+
+    // --- İSTATİSTİK ---
+    private long lookups = 0;
+    private long hits = 0;
+    private long rotations = 0;
+    private long earlyRotations = 0;
+
+    public SeenMessageCache(int slots, long windowMs) {
+        this.slots = Integer.highestOneBit((Math.max(16, slots) - 1) << 1); // 2'nin kuvvetine yuvarla
+        this.maxEntries = (int) (this.slots * MAX_LOAD);
+        this.windowNanos = windowMs * 1_000_000L;
+        this.current = new long[this.slots];
+        this.previous = new long[this.slots];
+        this.currentStartedAt = System.nanoTime();
+    }
+
+    /** Set.add gibi: ID daha önce görülmediyse ekler ve true döner. */
+    public boolean add(UUID id) {
+        return add(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public synchronized boolean add(long msb, long lsb) {
+        long key = key(msb, lsb);
+        maybeRotate();
+        lookups++;
+        if (find(current, key) || find(previous, key)) {
+            hits++;
+            return false;
+        }
+        if (currentSize >= maxEntries) {
+            earlyRotations++;
+            rotate();
+        }
+        insert(current, key);
+        currentSize++;
+        return true;
+    }
+
+    public boolean contains(UUID id) {
+        return contains(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    public synchronized boolean contains(long msb, long lsb) {
+        long key = key(msb, lsb);
+        maybeRotate();
+        return find(current, key) || find(previous, key);
+    }
+
+    // --- TABLO ---
+
+    // 128 bit UUID'yi 64 bit'e karıştır; 0 boş slot işareti olduğu için kullanılmaz
+    private static long key(long msb, long lsb) {
+        long k = msb * 0x9E3779B97F4A7C15L ^ lsb;
+        k ^= k >>> 31;
+        return k == EMPTY ? 1L : k;
+    }
+
+    private boolean find(long[] table, long key) {
+        int mask = slots - 1;
+        for (int i = (int) key & mask; ; i = (i + 1) & mask) {
+            long v = table[i];
+            if (v == key) return true;
+            if (v == EMPTY) return false;
+        }
+    }
+
+    private void insert(long[] table, long key) {
+        int mask = slots - 1;
+        int i = (int) key & mask;
+        while (table[i] != EMPTY) i = (i + 1) & mask;
+        table[i] = key;
+    }
+
+    private void maybeRotate() {
+        if (System.nanoTime() - currentStartedAt >= windowNanos) rotate();
+    }
+
+    // Eski nesli temizleyip yeni current olarak kullan (yeni dizi ayırma yok)
+    private void rotate() {
+        long[] recycled = previous;
+        Arrays.fill(recycled, EMPTY);
+        previous = current;
+        current = recycled;
+        currentSize = 0;
+        currentStartedAt = System.nanoTime();
+        rotations++;
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("slotsPerGeneration", slots);
+        stats.put("memoryBytes", 2L * slots * Long.BYTES);
+        stats.put("windowMs", windowNanos / 1_000_000);
+        stats.put("currentEntries", currentSize);
+        stats.put("lookups", lookups);
+        stats.put("duplicates", hits);
+        stats.put("hitRate", lookups == 0 ? 0.0 : Math.round(hits * 1000.0 / lookups) / 1000.0);
+        stats.put("rotations", rotations);
+        stats.put("earlyRotations", earlyRotations);
+        return stats;
+    }
+}
@@ -0,0 +1,301 @@
+package com.p2pstream.net.udp;
+
+import com.p2pstream.model.Constants;
+import com.p2pstream.model.VideoMetadata;
+import com.p2pstream.service.BloomFilter;
+import com.p2pstream.service.FileService;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * Peer'lar arası içerik özetleri (SUMMARY mesajı) ve özet tabanlı arama yönlendirme.
+ *
+ * Her peer kendi dosya adlarının küçük harf trigramlarını ve içerik hash'lerini bir Bloom
+ * filtresine koyar. Filtre yeni komşuya FULL olarak gönderilir; sonra sadece yeni 1 olan bitler
+ * DELTA olarak yayılır. Dosya silinmesi (Bloom'dan çıkarılamaz) veya filtrenin büyümesi gerekirse
+ * filtre baştan kurulur ve FULL gider; ayrıca SUMMARY_FULL_MS'de bir onarım için FULL gönderilir.
+ * Arama, özeti "belki var" diyen komşulara gider; özeti bilinmeyen komşuya her zaman gider.
+ * Araya kaçan bir DELTA görülürse komşunun özeti bilinmiyor sayılır ve ondan REQUEST ile FULL istenir.
+ *
+ * Format: [VERSION:1][kind:1][seq:4][hashes:1][log2Bits:1]
+ *         FULL:  [bits: 2^log2Bits / 8 byte]
+ *         DELTA: [baseSeq:4][count:4][bitPos:4]*
+ *         REQUEST: sadece [VERSION:1][kind:1]; alan taraf FULL ile cevap verir
+ */
+public final class SummaryRouter {
+
+    public static final byte VERSION = 1;
+    public static final byte KIND_FULL = 0;
+    public static final byte KIND_DELTA = 1;
+    public static final byte KIND_REQUEST = 2;
+
+    private static final int HEADER_BYTES = 8;
+
+    private static final class RemoteSummary {
+        final BloomFilter filter;
+        int seq;
+
+        RemoteSummary(BloomFilter filter, int seq) {
+            this.filter = filter;
+            this.seq = seq;
+        }
+    }
+
+    private final FileService fileService;
+
+    // --- YEREL ÖZET (this kilidi altında) ---
+    private BloomFilter local;
+    private int seq = 0;
+    private int itemCount = 0;
+    private int capacityItems = 0;
+    private final BitSet pendingBits = new BitSet();
+    private boolean needsRebuild = false;
+    private long lastFullNanos = 0;
+
+    // --- KOMŞU ÖZETLERİ ---
+    private final Map<String, RemoteSummary> remote = new ConcurrentHashMap<>();
+    private final Set<String> synced = ConcurrentHashMap.newKeySet();
+    private final Map<String, Long> fullRequested = new ConcurrentHashMap<>(); // ip -> son REQUEST (nanoTime)
+
+    private final LongAdder routedSearches = new LongAdder();
+    private final LongAdder floodedSearches = new LongAdder();
+    private final LongAdder sendsSkipped = new LongAdder();
+    private final LongAdder staleDeltas = new LongAdder();
+    private final LongAdder fullRequests = new LongAdder();
+
+    public SummaryRouter(FileService fileService) {
+        this.fileService = fileService;
+        rebuild();
+        fileService.addListener(new FileService.Listener() {
+            @Override public void onFileAdded(VideoMetadata meta) { addLocal(meta); }
+            @Override public void onFileRemoved(VideoMetadata meta) { markRebuild(); }
+        });
+    }
+
+    // --- ÖĞELER ---
+
+    // Bir dosyanın özete giren öğeleri: küçük harf ad trigramları + "#" + içerik hash'i
+    private static int forEachItem(VideoMetadata meta, LongConsumer sink) {
+        String folded = meta.getFileName().toLowerCase(Locale.ROOT);
+        int count = 0;
+        for (int i = 0; i + 3 <= folded.length(); i++, count++) {
+            sink.accept(BloomFilter.hash(folded.subSequence(i, i + 3)));
+        }
+        sink.accept(BloomFilter.hash("#" + meta.getFileHash().toLowerCase(Locale.ROOT)));
+        return count + 1;
+    }
+
+    /** Sorgunun trigram hash'leri; 3 karakterden kısa sorgu yönlendirilemez (null). */
+    public static long[] queryHashes(String query) {
+        String folded = query == null ? "" : query.toLowerCase(Locale.ROOT);
+        if (folded.length() < 3) return null;
+        long[] hashes = new long[folded.length() - 2];
+        for (int i = 0; i < hashes.length; i++) hashes[i] = BloomFilter.hash(folded.subSequence(i, i + 3));
+        return hashes;
+    }
+
+    // --- YEREL ÖZET ---
+
+    private synchronized void rebuild() {
+        List<VideoMetadata> files = fileService.searchFiles("");
+        int items = 0;
+        for (VideoMetadata meta : files) items += Math.max(0, meta.getFileName().length() - 2) + 1;
+
+        int log2 = BloomFilter.log2BitsFor(items, Constants.SUMMARY_BITS_PER_ITEM, Constants.SUMMARY_MAX_LOG2_BITS);
+        BloomFilter filter = new BloomFilter(log2, Constants.SUMMARY_HASHES);
+        int added = 0;
+        for (VideoMetadata meta : files) added += forEachItem(meta, h -> filter.add(h, null));
+
+        local = filter;
+        itemCount = added;
+        capacityItems = filter.sizeBits() / Constants.SUMMARY_BITS_PER_ITEM;
+        pendingBits.clear();
+        needsRebuild = false;
+        seq++;
+    }
+
+    private synchronized void addLocal(VideoMetadata meta) {
+        if (needsRebuild) return; // zaten baştan kurulacak
+        int[] added = {0};
+        forEachItem(meta, h -> {
+            local.add(h, pendingBits::set);
+            added[0]++;
+        });
+        itemCount += added[0];
+        // Filtre kapasitesini aştık ve büyüyebiliyorsa: bir sonraki tick'te büyük filtreyle FULL
+        if (itemCount > capacityItems && local.log2Bits() < Constants.SUMMARY_MAX_LOG2_BITS) needsRebuild = true;
+    }
+
+    private synchronized void markRebuild() {
+        needsRebuild = true;
+    }
+
+    /**
+     * Yeni komşuya giden FULL. Yayın durumuna dokunmaz: bekleyen bitler diğer komşulara bir
+     * sonraki DELTA ile yine gider (yeni komşu için zararsız tekrar), onarım zamanı da ertelenmez.
+     */
+    public synchronized byte[] encodeFull() {
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + local.byteSize());
+        buf.put(VERSION).put(KIND_FULL).putInt(seq).put((byte) local.hashes()).put((byte) local.log2Bits());
+        local.writeTo(buf);
+        return buf.array();
+    }
+
+    // Tüm komşulara giden FULL: bekleyen bitleri zaten içeriyor
+    private byte[] broadcastFull() {
+        lastFullNanos = System.nanoTime();
+        pendingBits.clear();
+        return encodeFull();
+    }
+
+    /**
+     * Periyodik çağrılır; komşulara gönderilecek payload'ı döner (yoksa null):
+     * baştan kurulum veya onarım zamanı geldiyse FULL, sadece yeni bitler varsa DELTA.
+     */
+    public synchronized byte[] tick() {
+        if (needsRebuild) {
+            rebuild();
+            return broadcastFull();
+        }
+        if (System.nanoTime() - lastFullNanos >= TimeUnit.MILLISECONDS.toNanos(Constants.SUMMARY_FULL_MS)) {
+            return broadcastFull();
+        }
+        if (pendingBits.isEmpty()) return null;
+
+        int count = pendingBits.cardinality();
+        if ((long) count * 4 >= local.byteSize()) {
+            seq++;
+            return broadcastFull();
+        }
+        ByteBuffer buf = ByteBuffer.allocate(HEADER_BYTES + 8 + count * 4);
+        int base = seq++;
+        buf.put(VERSION).put(KIND_DELTA).putInt(seq).put((byte) local.hashes()).put((byte) local.log2Bits());
+        buf.putInt(base).putInt(count);
+        for (int pos = pendingBits.nextSetBit(0); pos >= 0; pos = pendingBits.nextSetBit(pos + 1)) buf.putInt(pos);
+        pendingBits.clear();
+        return buf.array();
+    }
+
+    // --- KOMŞU ÖZETLERİ ---
+
+    /**
+     * Komşudan gelen SUMMARY'yi işler. Gönderene gidecek cevabı döner (yoksa null): REQUEST'e
+     * FULL, araya kaçan DELTA'ya REQUEST.
+     */
+    public byte[] onSummary(String ip, byte[] data) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        try {
+            byte version = buf.get();
+            if (version != VERSION) throw new IOException("Unsupported summary version=" + version);
+            byte kind = buf.get();
+            if (kind == KIND_REQUEST) return encodeFull();
+            int newSeq = buf.getInt();
+            int hashes = buf.get();
+            int log2 = buf.get();
+            if (hashes < 1 || hashes > 16 || log2 < 6 || log2 > Constants.SUMMARY_MAX_LOG2_BITS + 2) {
+                throw new IOException("Invalid summary params k=" + hashes + " log2=" + log2);
+            }
+
+            if (kind == KIND_FULL) {
+                remote.put(ip, new RemoteSummary(BloomFilter.readFrom(buf, log2, hashes), newSeq));
+                fullRequested.remove(ip);
+            } else if (kind == KIND_DELTA) {
+                int base = buf.getInt();
+                int count = buf.getInt();
+                RemoteSummary rs = remote.get(ip);
+                if (rs == null) return requestFull(ip); // FULL hiç gelmedi (kayboldu veya biz yeniden başladık)
+                synchronized (rs) {
+                    if (rs.filter.log2Bits() != log2 || rs.filter.hashes() != hashes || base - rs.seq > 0) {
+                        // Araya kaçan bir güncelleme var: özet artık güvenilmez, FULL gelene kadar bilinmiyor say
+                        remote.remove(ip, rs);
+                        staleDeltas.increment();
+                        return requestFull(ip);
+                    }
+                    if (newSeq - rs.seq <= 0) {
+                        // Geç gelen eski DELTA: bitleri zaten sonraki güncellemelerle geldi
+                        staleDeltas.increment();
+                        return null;
+                    }
+                    for (int i = 0; i < count; i++) rs.filter.setBit(buf.getInt());
+                    rs.seq = newSeq;
+                }
+            } else {
+                throw new IOException("Unknown summary kind=" + kind);
+            }
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Truncated summary", e);
+        }
+        return null;
+    }
+
+    // Her DELTA'da yeniden istenmesin: cevap gelmezse SUMMARY_RESYNC_MS sonra tekrar istenir
+    private byte[] requestFull(String ip) {
+        long now = System.nanoTime();
+        Long last = fullRequested.get(ip);
+        if (last != null && now - last < TimeUnit.MILLISECONDS.toNanos(Constants.SUMMARY_RESYNC_MS)) return null;
+        fullRequested.put(ip, now);
+        fullRequests.increment();
+        return new byte[]{VERSION, KIND_REQUEST};
+    }
+
+    /** Komşunun özeti sorgunun tüm trigramlarını içeriyor mu? Özet bilinmiyorsa true. */
+    public boolean mightMatch(String ip, long[] queryHashes) {
+        RemoteSummary rs = remote.get(ip);
+        if (rs == null) return true;
+        synchronized (rs) {
+            for (long h : queryHashes) {
+                if (!rs.filter.mightContain(h)) return false;
+            }
+        }
+        return true;
+    }
+
+    /** Bu komşuya henüz FULL özet göndermediysek true döner ve gönderilmiş olarak işaretler. */
+    public boolean markSynced(String ip) {
+        return synced.add(ip);
+    }
+
+    public void forget(String ip) {
+        synced.remove(ip);
+        remote.remove(ip);
+        fullRequested.remove(ip);
+    }
+
+    void countRouted(int skipped) {
+        routedSearches.increment();
+        sendsSkipped.add(skipped);
+    }
+
+    void countFlooded() {
+        floodedSearches.increment();
+    }
+
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("seq", seq);
+        stats.put("bits", local.sizeBits());
+        stats.put("hashes", local.hashes());
+        stats.put("items", itemCount);
+        stats.put("fillRatio", Math.round(local.bitCount() * 1000.0 / local.sizeBits()) / 1000.0);
+        stats.put("estFalsePositiveRate", Math.round(local.falsePositiveRate() * 10000) / 10000.0);
+        stats.put("neighbourSummaries", remote.size());
+        stats.put("routedSearches", routedSearches.sum());
+        stats.put("floodedSearches", floodedSearches.sum());
+        stats.put("sendsSkipped", sendsSkipped.sum());
+        stats.put("staleDeltas", staleDeltas.sum());
+        stats.put("fullRequests", fullRequests.sum());
+        return stats;
+    }
+}
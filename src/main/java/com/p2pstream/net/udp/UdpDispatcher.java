@@ -0,0 +1,188 @@
+package com.p2pstream.net.udp;
+
+import com.p2pstream.model.MessageType;
+
+import java.net.InetAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Alım thread'i ile handler'ları ayırır: çözülen paketler iki kilitsiz kuyruğa (yüksek/düşük
+ * öncelik) girer, sabit sayıda worker önce yüksek öncelikli kuyruğu boşaltır. Böylece cevap
+ * flood'ları HELLO/DISCOVER/SEARCH'ü bekletmez; kuyruk doluysa paket sayılarak atılır.
+ */
+final class UdpDispatcher {
+
+    private static final class Task {
+        final Packet packet;
+        final InetAddress sender;
+        final int senderPort;
+        final long enqueuedAt;
+
+        Task(Packet packet, InetAddress sender, int senderPort) {
+            this.packet = packet;
+            this.sender = sender;
+            this.senderPort = senderPort;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private final UdpPacketHandler handler;
+    private final int workers;
+    private final int capacity;
+
+    private final Queue<Task> high = new ConcurrentLinkedQueue<>();
+    private final Queue<Task> low = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger highDepth = new AtomicInteger();
+    private final AtomicInteger lowDepth = new AtomicInteger();
+    private final Semaphore ready = new Semaphore(0);
+    private Thread[] threads = new Thread[0];
+    private volatile boolean running = false;
+
+    // --- SAYAÇLAR ---
+    private final LongAdder dispatched = new LongAdder();
+    private final LongAdder droppedHigh = new LongAdder();
+    private final LongAdder droppedLow = new LongAdder();
+    private final LongAdder handlerErrors = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final LongAdder[] handled = new LongAdder[TYPES.length];
+    private final LongAdder[] handlerNanos = new LongAdder[TYPES.length];
+    private final LongAdder[] queueNanos = new LongAdder[TYPES.length];
+    private final AtomicLong[] maxHandlerNanos = new AtomicLong[TYPES.length];
+
+    UdpDispatcher(UdpPacketHandler handler, int workers, int capacity) {
+        this.handler = handler;
+        this.workers = Math.max(1, workers);
+        this.capacity = capacity;
+        for (int i = 0; i < TYPES.length; i++) {
+            handled[i] = new LongAdder();
+            handlerNanos[i] = new LongAdder();
+            queueNanos[i] = new LongAdder();
+            maxHandlerNanos[i] = new AtomicLong();
+        }
+    }
+
+    // Cevaplar (ve ileride eklenen yoğun tipler) düşük öncelikli; heartbeat'ler RTT bozulmasın diye yüksek
+    static boolean isHighPriority(MessageType type) {
+        switch (type) {
+            case HELLO:
+            case DISCOVER:
+            case SEARCH:
+            case HEARTBEAT:
+            case HEARTBEAT_ACK:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        threads = new Thread[workers];
+        for (int i = 0; i < workers; i++) {
+            threads[i] = new Thread(this::workLoop, "udp-worker-" + i);
+            threads[i].setDaemon(true);
+            threads[i].start();
+        }
+    }
+
+    synchronized void stop() {
+        running = false;
+        for (Thread t : threads) t.interrupt();
+        high.clear();
+        low.clear();
+        highDepth.set(0);
+        lowDepth.set(0);
+        ready.drainPermits();
+    }
+
+    /** Alım thread'inden çağrılır; kuyruk doluysa false döner ve paket atılır. */
+    boolean dispatch(Packet packet, InetAddress sender, int senderPort) {
+        boolean isHigh = isHighPriority(packet.messageType);
+        AtomicInteger depth = isHigh ? highDepth : lowDepth;
+        int d = depth.incrementAndGet();
+        if (d > capacity) {
+            depth.decrementAndGet();
+            (isHigh ? droppedHigh : droppedLow).increment();
+            return false;
+        }
+        maxDepth.accumulateAndGet(highDepth.get() + lowDepth.get(), Math::max);
+        (isHigh ? high : low).offer(new Task(packet, sender, senderPort));
+        dispatched.increment();
+        ready.release();
+        return true;
+    }
+
+    private void workLoop() {
+        while (running) {
+            try {
+                if (!ready.tryAcquire(500, TimeUnit.MILLISECONDS)) continue;
+            } catch (InterruptedException e) {
+                return;
+            }
+            Task task = high.poll();
+            if (task != null) {
+                highDepth.decrementAndGet();
+            } else {
+                task = low.poll();
+                if (task == null) continue;
+                lowDepth.decrementAndGet();
+            }
+            run(task);
+        }
+    }
+
+    private void run(Task task) {
+        int ord = task.packet.messageType.ordinal();
+        long start = System.nanoTime();
+        queueNanos[ord].add(start - task.enqueuedAt);
+        try {
+            UdpServer.route(handler, task.packet, task.sender, task.senderPort);
+        } catch (RuntimeException e) {
+            handlerErrors.increment();
+            System.err.println("Handler hatası (" + task.packet.messageType + "): " + e.getMessage());
+        }
+        long took = System.nanoTime() - start;
+        handled[ord].increment();
+        handlerNanos[ord].add(took);
+        maxHandlerNanos[ord].accumulateAndGet(took, Math::max);
+    }
+
+    Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("workers", workers);
+        stats.put("queueCapacity", capacity);
+        stats.put("queueDepthHigh", highDepth.get());
+        stats.put("queueDepthLow", lowDepth.get());
+        stats.put("maxQueueDepth", maxDepth.get());
+        stats.put("dispatched", dispatched.sum());
+        stats.put("droppedHigh", droppedHigh.sum());
+        stats.put("droppedLow", droppedLow.sum());
+        stats.put("handlerErrors", handlerErrors.sum());
+
+        Map<String, Object> perType = new LinkedHashMap<>();
+        for (MessageType type : TYPES) {
+            int i = type.ordinal();
+            long count = handled[i].sum();
+            if (count == 0) continue;
+            Map<String, Object> t = new LinkedHashMap<>();
+            t.put("handled", count);
+            t.put("avgHandlerUs", handlerNanos[i].sum() / count / 1000);
+            t.put("maxHandlerUs", maxHandlerNanos[i].get() / 1000);
+            t.put("avgQueueUs", queueNanos[i].sum() / count / 1000);
+            perType.put(type.name(), t);
+        }
+        stats.put("types", perType);
+        return stats;
+    }
+}
@@ -4,10 +4,17 @@ import java.net.DatagramPacket;
 import java.net.InetAddress;
 
 public interface UdpPacketHandler {
+    /** Packet oluşturulmadan önce çağrılır; false dönerse datagram sessizce atılır. */
+    default boolean accept(PacketView view) { return true; }
+
     void handleHello(Packet packet, InetAddress sender, int senderPort);
     void handleDiscover(Packet packet, InetAddress sender, int senderPort);
     void handleDiscoverReply(Packet packet, InetAddress sender, int senderPort);
 
     void handleSearch(Packet packet, InetAddress sender, int senderPort);
     void handleSearchReply(Packet packet, InetAddress sender, int senderPort);
+
+    default void handleHeartbeat(Packet packet, InetAddress sender, int senderPort) {}
+    default void handleHeartbeatAck(Packet packet, InetAddress sender, int senderPort) {}
+    default void handleSummary(Packet packet, InetAddress sender, int senderPort) {}
 }
\ No newline at end of file
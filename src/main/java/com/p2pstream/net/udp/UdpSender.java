@@ -1,34 +1,120 @@
 package com.p2pstream.net.udp;
 
+import com.p2pstream.model.Constants;
+
+import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.List;
 
-public final class UdpSender {
+/**
+ * Tüm giden UDP paketleri tek, uzun ömürlü bir DatagramChannel üzerinden gider
+ * (paket başına soket aç/kapa yok). Subnet broadcast adresleri önbellekte tutulur
+ * ve BROADCAST_REFRESH_MS'de bir yeniden hesaplanır.
+ */
+public final class UdpSender implements AutoCloseable {
+
+    private DatagramChannel channel;
+
+    private volatile List<InetAddress> broadcastTargets = Collections.emptyList();
+    private volatile long broadcastRefreshedAt = 0;
+
+    private synchronized DatagramChannel channel() throws IOException {
+        if (channel == null || !channel.isOpen()) {
+            channel = DatagramChannel.open();
+            channel.setOption(StandardSocketOptions.SO_BROADCAST, true); // Gerekirse broadcast'e izin ver
+            channel.configureBlocking(true);
+        }
+        return channel;
+    }
 
     /**
      * Belirtilen hedef IP ve Porta tek bir paket gönderir (Unicast).
      */
     public void send(byte[] payload, InetAddress targetIp, int targetPort) {
-        try (DatagramSocket socket = new DatagramSocket()) {
-            socket.setBroadcast(true); // Gerekirse broadcast'e izin ver
-            DatagramPacket packet = new DatagramPacket(payload, payload.length, targetIp, targetPort);
-            socket.send(packet);
+        send(payload, new InetSocketAddress(targetIp, targetPort));
+    }
+
+    public void send(byte[] payload, InetSocketAddress target) {
+        try {
+            channel().send(ByteBuffer.wrap(payload), target);
         } catch (Exception e) {
-            System.err.println("Paket gönderilemedi: " + targetIp + " -> " + e.getMessage());
+            System.err.println("Paket gönderilemedi: " + target + " -> " + e.getMessage());
+        }
+    }
+
+    /**
+     * Aynı paketi birden fazla hedefe gönderir; tampon ve kanal hedefler arasında paylaşılır.
+     * (JDK'da sendmmsg yok, toplu gönderim tek kanal + tek tampon ile yapılır.)
+     */
+    public void sendToAll(byte[] payload, Collection<InetSocketAddress> targets) {
+        sendToAll(ByteBuffer.wrap(payload), targets);
+    }
+
+    /** payload'un position..limit aralığını gönderir; dönüşte pozisyon değişmemiş olur. */
+    public void sendToAll(ByteBuffer payload, Collection<InetSocketAddress> targets) {
+        if (targets.isEmpty()) return;
+        DatagramChannel ch;
+        try {
+            ch = channel();
+        } catch (IOException e) {
+            System.err.println("UDP kanalı açılamadı: " + e.getMessage());
+            return;
+        }
+        int start = payload.position();
+        for (InetSocketAddress target : targets) {
+            try {
+                payload.position(start);
+                ch.send(payload, target);
+            } catch (Exception e) {
+                System.err.println("Paket gönderilemedi: " + target + " -> " + e.getMessage());
+            }
         }
+        payload.position(start);
     }
 
     /**
      * BULUNDUĞU AĞDAKİ SUBNET MASK'E BAKARAK DISCOVER YOLLAR.
-     * Tüm ağ arayüzlerini (Wi-Fi, Ethernet) sırayla gezer ve her birinin
-     * broadcast adresini hesaplayıp paketi oraya atar.
+     * Her arayüzün broadcast adresine gönderir; adres listesi önbellekten gelir.
      */
     public void sendToAllLocalSubnets(byte[] payload, int targetPort) {
+        sendToAllLocalSubnets(ByteBuffer.wrap(payload), targetPort);
+    }
+
+    public void sendToAllLocalSubnets(ByteBuffer payload, int targetPort) {
+        List<InetAddress> targets = broadcastTargets();
+        List<InetSocketAddress> addresses = new ArrayList<>(targets.size());
+        for (InetAddress broadcast : targets) addresses.add(new InetSocketAddress(broadcast, targetPort));
+        sendToAll(payload, addresses);
+    }
+
+    private List<InetAddress> broadcastTargets() {
+        long now = System.currentTimeMillis();
+        if (now - broadcastRefreshedAt >= Constants.BROADCAST_REFRESH_MS) {
+            synchronized (this) {
+                if (now - broadcastRefreshedAt >= Constants.BROADCAST_REFRESH_MS) {
+                    List<InetAddress> fresh = scanBroadcastAddresses();
+                    if (!fresh.equals(broadcastTargets)) {
+                        System.out.println("Subnet Taraması: broadcast adresleri " + fresh);
+                    }
+                    broadcastTargets = fresh;
+                    broadcastRefreshedAt = now;
+                }
+            }
+        }
+        return broadcastTargets;
+    }
+
+    // Tüm ağ arayüzlerini (Wi-Fi, Ethernet) gezip IPv4 broadcast adreslerini topla
+    private static List<InetAddress> scanBroadcastAddresses() {
+        List<InetAddress> result = new ArrayList<>();
         try {
-            // 1. Bilgisayardaki tüm ağ arayüzlerini (Interface) getir
             Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
-
             while (interfaces.hasMoreElements()) {
                 NetworkInterface networkInterface = interfaces.nextElement();
 
@@ -37,26 +123,22 @@ public final class UdpSender {
                     continue;
                 }
 
-                // 2. Bu arayüze bağlı IP adreslerini ve Subnet bilgilerini al
-                List<InterfaceAddress> interfaceAddresses = networkInterface.getInterfaceAddresses();
-
-                for (InterfaceAddress addr : interfaceAddresses) {
-                    // Subnet Mask kullanılarak hesaplanmış Broadcast adresi
+                for (InterfaceAddress addr : networkInterface.getInterfaceAddresses()) {
+                    // IPv6'da genelde null olur, IPv4'te doludur
                     InetAddress broadcast = addr.getBroadcast();
-
-                    // Eğer broadcast adresi null değilse (IPv6'da genelde null olur, IPv4'te doludur)
-                    if (broadcast != null) {
-                        System.out.println("Subnet Taraması: " + networkInterface.getDisplayName()
-                                + " üzerinden " + broadcast + " adresine gönderiliyor...");
-
-                        // Hesaplanmış broadcast adresine gönder
-                        send(payload, broadcast, targetPort);
-                    }
+                    if (broadcast != null && !result.contains(broadcast)) result.add(broadcast);
                 }
             }
         } catch (Exception e) {
             System.err.println("Subnet taraması sırasında hata: " + e.getMessage());
-            e.printStackTrace();
         }
+        return Collections.unmodifiableList(result);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (channel == null) return;
+        try { channel.close(); } catch (IOException ignored) {}
+        channel = null;
     }
-}
\ No newline at end of file
+}
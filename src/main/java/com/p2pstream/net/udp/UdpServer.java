@@ -1,32 +1,52 @@
 package com.p2pstream.net.udp;
 
+import com.p2pstream.model.Constants;
 import com.p2pstream.model.MessageType;
 import com.p2pstream.service.PacketCodec;
 
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 
 public class UdpServer implements Runnable {
     private final int port;
     private DatagramSocket socket;
     private volatile boolean running = false;
     private final UdpPacketHandler handler;
+    // Handler'lar alım thread'inde değil, worker havuzunda çalışır
+    private final UdpDispatcher dispatcher;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder filtered = new LongAdder();
+    private final LongAdder decodeErrors = new LongAdder();
 
     public UdpServer(int port, UdpPacketHandler handler) {
+        this(port, handler, Constants.UDP_WORKERS, Constants.UDP_QUEUE_CAPACITY);
+    }
+
+    public UdpServer(int port, UdpPacketHandler handler, int workers, int queueCapacity) {
         this.port = port;
         this.handler = handler;
+        this.dispatcher = new UdpDispatcher(handler, workers, queueCapacity);
     }
 
     public void start() throws SocketException {
         if (running) return;
         socket = new DatagramSocket(port);
+        // Worker'lar geride kalırsa ilk tampon kernel'deki alım kuyruğu
+        socket.setReceiveBufferSize(Constants.UDP_RECEIVE_BUFFER_BYTES);
         running = true;
+        dispatcher.start();
         new Thread(this).start();
         System.out.println("UDP Server started on port " + port);
     }
 
     public void stop() {
         running = false;
+        dispatcher.stop();
         if (socket != null && !socket.isClosed()) {
             socket.close();
         }
@@ -35,19 +55,32 @@ public class UdpServer implements Runnable {
 
     @Override
     public void run() {
+        // Tampon, DatagramPacket ve görünüm döngü boyunca yeniden kullanılır
         byte[] buffer = new byte[65535];
+        ByteBuffer wrapped = ByteBuffer.wrap(buffer);
+        DatagramPacket datagramPacket = new DatagramPacket(buffer, buffer.length);
+        PacketView view = new PacketView();
         while (running) {
             try {
-                DatagramPacket datagramPacket = new DatagramPacket(buffer, buffer.length);
+                datagramPacket.setLength(buffer.length);
                 socket.receive(datagramPacket);
+                received.increment();
 
-                // Parse packet
-                Packet packet = PacketCodec.decode(datagramPacket.getData(), datagramPacket.getLength());
-                InetAddress senderAddress = datagramPacket.getAddress();
-                int senderPort = datagramPacket.getPort();
+                // Parse packet (kopyasız); tekrar gelen paketler Packet oluşturulmadan elenir
+                wrapped.limit(datagramPacket.getLength()).position(0);
+                try {
+                    PacketCodec.decode(wrapped, view);
+                } catch (IOException e) {
+                    decodeErrors.increment();
+                    continue;
+                }
+                if (!handler.accept(view)) {
+                    filtered.increment();
+                    continue;
+                }
 
-                // Route based on MessageType
-                routePacket(packet, senderAddress, senderPort);
+                // Route based on MessageType (worker havuzunda)
+                dispatcher.dispatch(view.toPacket(), datagramPacket.getAddress(), datagramPacket.getPort());
 
             } catch (SocketException e) {
                 if (running) {
@@ -59,7 +92,7 @@ public class UdpServer implements Runnable {
         }
     }
 
-    private void routePacket(Packet packet, InetAddress sender, int senderPort) {
+    static void route(UdpPacketHandler handler, Packet packet, InetAddress sender, int senderPort) {
         switch (packet.messageType) {
             case HELLO:
                 handler.handleHello(packet, sender, senderPort);
@@ -76,6 +109,15 @@ public class UdpServer implements Runnable {
             case SEARCH_REPLY:
                 handler.handleSearchReply(packet, sender, senderPort);
                 break;
+            case HEARTBEAT:
+                handler.handleHeartbeat(packet, sender, senderPort);
+                break;
+            case HEARTBEAT_ACK:
+                handler.handleHeartbeatAck(packet, sender, senderPort);
+                break;
+            case SUMMARY:
+                handler.handleSummary(packet, sender, senderPort);
+                break;
             default:
                 System.err.println("Unknown message type: " + packet.messageType);
         }
@@ -85,4 +127,14 @@ public class UdpServer implements Runnable {
         return running;
     }
 
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running);
+        stats.put("received", received.sum());
+        stats.put("filtered", filtered.sum());
+        stats.put("decodeErrors", decodeErrors.sum());
+        stats.putAll(dispatcher.snapshot());
+        return stats;
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package com.p2pstream.service;
+
+import java.nio.ByteBuffer;
+import java.util.function.IntConsumer;
+
+/**
+ * Sabit boyutlu Bloom filtresi (bit sayısı 2'nin kuvveti). Aynı öğe her peer'da aynı bitlere
+ * düşmeli, bu yüzden hash fonksiyonu JVM'in String.hashCode'una değil sadece karakterlere bağlı
+ * (FNV-1a + splitmix64, çift hash ile k pozisyon).
+ */
+public final class BloomFilter {
+
+    private final long[] words;
+    private final int mask;
+    private final int hashes;
+    private int bitCount = 0;
+
+    public BloomFilter(int log2Bits, int hashes) {
+        if (log2Bits < 6 || log2Bits > 30) throw new IllegalArgumentException("log2Bits=" + log2Bits);
+        this.words = new long[1 << (log2Bits - 6)];
+        this.mask = (1 << log2Bits) - 1;
+        this.hashes = hashes;
+    }
+
+    /** Beklenen öğe sayısı için bits/öğe oranını tutturan en küçük 2^n boyutu (maxLog2Bits ile sınırlı). */
+    public static int log2BitsFor(int expectedItems, int bitsPerItem, int maxLog2Bits) {
+        long wanted = Math.max(1024L, (long) expectedItems * bitsPerItem);
+        int log2 = 64 - Long.numberOfLeadingZeros(wanted - 1);
+        return Math.min(log2, maxLog2Bits);
+    }
+
+    public int log2Bits() { return Integer.numberOfTrailingZeros(mask + 1); }
+    public int hashes() { return hashes; }
+    public int bitCount() { return bitCount; }
+    public int sizeBits() { return mask + 1; }
+
+    /** Öğeyi hash()'i ile ekler; yeni 1 olan her bitin pozisyonu newBits'e verilir (delta için, null olabilir). */
+    public void add(long h, IntConsumer newBits) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int pos = (h1 + i * h2) & mask;
+            if (setBit(pos) && newBits != null) newBits.accept(pos);
+        }
+    }
+
+    /** Aynı sorgu birçok filtreye karşı kontrol edilecekse hash bir kere hesaplanır. */
+    public boolean mightContain(long h) {
+        int h1 = (int) h;
+        int h2 = (int) (h >>> 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            int pos = (h1 + i * h2) & mask;
+            if ((words[pos >>> 6] & (1L << pos)) == 0) return false;
+        }
+        return true;
+    }
+
+    /** Bit'i 1 yapar; daha önce 0 idiyse true. */
+    public boolean setBit(int pos) {
+        if (pos < 0 || pos > mask) return false;
+        long bit = 1L << pos;
+        int w = pos >>> 6;
+        if ((words[w] & bit) != 0) return false;
+        words[w] |= bit;
+        bitCount++;
+        return true;
+    }
+
+    /** Dolu bit oranına göre tahmini yanlış pozitif oranı. */
+    public double falsePositiveRate() {
+        return Math.pow((double) bitCount / (mask + 1), hashes);
+    }
+
+    public void writeTo(ByteBuffer dst) {
+        for (long w : words) dst.putLong(w);
+    }
+
+    public int byteSize() {
+        return words.length * Long.BYTES;
+    }
+
+    public static BloomFilter readFrom(ByteBuffer src, int log2Bits, int hashes) {
+        BloomFilter f = new BloomFilter(log2Bits, hashes);
+        for (int i = 0; i < f.words.length; i++) {
+            f.words[i] = src.getLong();
+            f.bitCount += Long.bitCount(f.words[i]);
+        }
+        return f;
+    }
+
+    public static long hash(CharSequence s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); i++) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        // splitmix64 finalizer: alt ve üst 32 bit bağımsız olsun
+        h += 0x9E3779B97F4A7C15L;
+        h = (h ^ (h >>> 30)) * 0xBF58476D1CE4E5B9L;
+        h = (h ^ (h >>> 27)) * 0x94D049BB133111EBL;
+        return h ^ (h >>> 31);
+    }
+}
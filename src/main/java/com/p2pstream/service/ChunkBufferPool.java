@@ -0,0 +1,144 @@
+package com.p2pstream.service;
+
+import com.p2pstream.model.Constants;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * CHUNK_SIZE'lık buffer havuzu. Chunk başına 256 KB'lık dizi ayırmak G1'de humongous
+ * bölgelere gider; kullanılan buffer geri verilir, havuzda en fazla maxPooled tane tutulur.
+ * Havuz boşsa bloklamak yerine yeni buffer ayrılır ve "exhausted" sayılır.
+ *
+ * Sızıntı tespiti: verilen her buffer zayıf referansla izlenir. Geri verilmeden GC'ye giden
+ * buffer "leaked" sayılır ve loglanır (BUFFER_POOL_LEAK_TRACE ile alındığı yer de). Kiralanmamış
+ * bir buffer'ın iadesi (çift release) yok sayılır: aynı buffer iki kullanıcıya verilmez.
+ */
+public final class ChunkBufferPool {
+
+    /** Kanal tabanlı yollar (downloader, /api/watch, yazma birleştirici) için direct buffer'lar. */
+    public static final ChunkBufferPool SHARED = new ChunkBufferPool("direct", Constants.CHUNK_SIZE, Constants.BUFFER_POOL_MAX, true);
+    /** Stream tabanlı yollar (thread modlu TcpServer) için array() erişimli heap buffer'lar. */
+    public static final ChunkBufferPool HEAP = new ChunkBufferPool("heap", Constants.CHUNK_SIZE, Constants.BUFFER_POOL_MAX, false);
+
+    // Kiralanmış buffer; eşitlik buffer kimliğine göre (ByteBuffer.equals içeriği karşılaştırır)
+    private static final class Lease extends WeakReference<ByteBuffer> {
+        final int identity;
+        final Throwable acquiredAt; // sadece iz açıksa
+
+        Lease(ByteBuffer buf, ReferenceQueue<ByteBuffer> queue, Throwable acquiredAt) {
+            super(buf, queue);
+            this.identity = System.identityHashCode(buf);
+            this.acquiredAt = acquiredAt;
+        }
+
+        @Override public int hashCode() { return identity; }
+
+        @Override public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Lease other)) return false;
+            ByteBuffer buf = get();
+            return buf != null && buf == other.get();
+        }
+    }
+
+    private final String name;
+    private final int bufferSize;
+    private final int maxPooled;
+    private final boolean direct;
+    private final Queue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pooled = new AtomicInteger();
+    private final Set<Lease> leases = ConcurrentHashMap.newKeySet();
+    private final ReferenceQueue<ByteBuffer> collected = new ReferenceQueue<>();
+
+    // --- SAYAÇLAR ---
+    private final AtomicLong acquires = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong exhausted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong doubleReleases = new AtomicLong();
+    private final AtomicLong leaked = new AtomicLong();
+
+    public ChunkBufferPool(String name, int bufferSize, int maxPooled, boolean direct) {
+        this.name = name;
+        this.bufferSize = bufferSize;
+        this.maxPooled = maxPooled;
+        this.direct = direct;
+    }
+
+    public int bufferSize() { return bufferSize; }
+
+    /** Temizlenmiş (position=0, limit=capacity) bir buffer; işi bitince release edilmeli. */
+    public ByteBuffer acquire() {
+        reapLeaks();
+        acquires.incrementAndGet();
+        ByteBuffer buf = free.poll();
+        if (buf != null) {
+            pooled.decrementAndGet();
+            hits.incrementAndGet();
+            buf.clear();
+        } else {
+            exhausted.incrementAndGet();
+            buf = direct ? ByteBuffer.allocateDirect(bufferSize) : ByteBuffer.allocate(bufferSize);
+        }
+        Throwable site = Constants.BUFFER_POOL_LEAK_TRACE ? new Throwable("Buffer acquired here") : null;
+        leases.add(new Lease(buf, collected, site));
+        return buf;
+    }
+
+    public void release(ByteBuffer buf) {
+        if (buf == null) return;
+        Lease probe = new Lease(buf, null, null);
+        boolean leased = leases.remove(probe);
+        probe.clear();
+        if (!leased) {
+            doubleReleases.incrementAndGet();
+            return;
+        }
+        if (pooled.incrementAndGet() > maxPooled) {
+            pooled.decrementAndGet();
+            dropped.incrementAndGet();
+            return;
+        }
+        free.offer(buf.clear());
+    }
+
+    // Geri verilmeden toplanan buffer'lar: GC zaten belleği geri aldı, sadece sayılır ve loglanır
+    private void reapLeaks() {
+        Reference<? extends ByteBuffer> ref;
+        while ((ref = collected.poll()) != null) {
+            Lease lease = (Lease) ref;
+            if (!leases.remove(lease)) continue;
+            long count = leaked.incrementAndGet();
+            System.err.println("⚠️ ChunkBufferPool[" + name + "] leak #" + count + ": buffer was never released"
+                    + (lease.acquiredAt == null ? " (set BUFFER_POOL_LEAK_TRACE=true for the acquire site)" : ""));
+            if (lease.acquiredAt != null) lease.acquiredAt.printStackTrace();
+        }
+    }
+
+    public Map<String, Object> snapshot() {
+        reapLeaks();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bufferSize", bufferSize);
+        stats.put("pooled", pooled.get());
+        stats.put("maxPooled", maxPooled);
+        stats.put("outstanding", leases.size());
+        stats.put("acquires", acquires.get());
+        stats.put("hits", hits.get());
+        stats.put("exhausted", exhausted.get());
+        stats.put("dropped", dropped.get());
+        stats.put("doubleReleases", doubleReleases.get());
+        stats.put("leaked", leaked.get());
+        return stats;
+    }
+}
@@ -0,0 +1,166 @@
+package com.p2pstream.service;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+/**
+ * Kalıcı içerik hash index'i: (path, boyut, mtime) -> hash, chunk sayısı, chunk hash'leri.
+ * Değişmeyen dosyalar açılışta tekrar hash'lenmez.
+ *
+ * Format: [MAGIC:4][VERSION:4][count:4] { [path:UTF][size:8][mtime:8][hash:UTF][chunks:4]
+ *         [merkleRoot:UTF][chunkHashLen:4][chunkHashes] }* [CRC32:8]
+ * Versiyon uyuşmazsa veya CRC tutmazsa index atılır ve dosyalar baştan hash'lenir.
+ */
+final class FileIndex {
+
+    private static final int MAGIC = 0x50324958; // "P2IX"
+    static final int VERSION = 1;
+
+    static final class Entry {
+        final String path;
+        final long size;
+        final long mtime;
+        final String hash;
+        final int chunks;
+        final String merkleRoot;
+        final byte[] chunkHashes;
+
+        Entry(String path, long size, long mtime, String hash, int chunks, String merkleRoot, byte[] chunkHashes) {
+            this.path = path;
+            this.size = size;
+            this.mtime = mtime;
+            this.hash = hash;
+            this.chunks = chunks;
+            this.merkleRoot = merkleRoot;
+            this.chunkHashes = chunkHashes;
+        }
+    }
+
+    private final Path indexFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean dirty = false;
+
+    FileIndex(Path indexFile) {
+        this.indexFile = indexFile;
+    }
+
+    // --- OKUMA ---
+
+    void load() {
+        if (!Files.isRegularFile(indexFile)) return;
+        try {
+            byte[] bytes = Files.readAllBytes(indexFile);
+            if (bytes.length < 20) throw new IOException("too short");
+
+            CRC32 crc = new CRC32();
+            crc.update(bytes, 0, bytes.length - 8);
+            if (crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - 8, 8).getLong()) {
+                throw new IOException("CRC mismatch");
+            }
+
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 8));
+            if (in.readInt() != MAGIC) throw new IOException("bad magic");
+            int version = in.readInt();
+            if (version != VERSION) {
+                System.out.println("Index versiyonu eski (" + version + " != " + VERSION + "), yeniden oluşturulacak");
+                dirty = true;
+                return;
+            }
+
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                long mtime = in.readLong();
+                String hash = in.readUTF();
+                int chunks = in.readInt();
+                String root = in.readUTF();
+                byte[] chunkHashes = new byte[in.readInt()];
+                in.readFully(chunkHashes);
+                entries.put(path, new Entry(path, size, mtime, hash, chunks, root.isEmpty() ? null : root, chunkHashes));
+            }
+            System.out.println("Index yüklendi: " + entries.size() + " kayıt (" + indexFile + ")");
+        } catch (IOException | RuntimeException e) {
+            // Bozuk index: kenara al, baştan hash'le
+            System.err.println("Index bozuk, yeniden oluşturulacak: " + indexFile + " -> " + e.getMessage());
+            entries.clear();
+            dirty = true;
+            try {
+                Files.move(indexFile, indexFile.resolveSibling(indexFile.getFileName() + ".corrupt"),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException ignored) {}
+        }
+    }
+
+    /** Dosya boyutu ve mtime değişmediyse kayıtlı hash'leri döner, aksi halde null. */
+    Entry lookup(String path, long size, long mtime) {
+        Entry e = entries.get(path);
+        return (e != null && e.size == size && e.mtime == mtime) ? e : null;
+    }
+
+    // --- YAZMA ---
+
+    void put(Entry entry) {
+        entries.put(entry.path, entry);
+        dirty = true;
+    }
+
+    void remove(String path) {
+        if (entries.remove(path) != null) dirty = true;
+    }
+
+    /** Tarama sırasında görülmeyen (silinmiş) dosyaların kayıtlarını at. */
+    void retainOnly(Collection<String> seenPaths) {
+        if (entries.keySet().retainAll(seenPaths)) dirty = true;
+    }
+
+    /** Geçici dosyaya yazıp fsync eder, sonra atomik olarak eskisinin yerine koyar. */
+    synchronized void save() {
+        if (!dirty) return;
+        // Snapshot'tan önce temizlenir: yazarken gelen put tekrar kirletir ve bir sonraki save'de yazılır
+        dirty = false;
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bos);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            List<Entry> snapshot = new ArrayList<>(entries.values());
+            out.writeInt(snapshot.size());
+            for (Entry e : snapshot) {
+                out.writeUTF(e.path);
+                out.writeLong(e.size);
+                out.writeLong(e.mtime);
+                out.writeUTF(e.hash);
+                out.writeInt(e.chunks);
+                out.writeUTF(e.merkleRoot == null ? "" : e.merkleRoot);
+                out.writeInt(e.chunkHashes == null ? 0 : e.chunkHashes.length);
+                if (e.chunkHashes != null) out.write(e.chunkHashes);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(bos.toByteArray());
+            out.writeLong(crc.getValue());
+            out.flush();
+
+            Files.createDirectories(indexFile.toAbsolutePath().getParent());
+            Path tmp = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            try (FileChannel ch = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer buf = ByteBuffer.wrap(bos.toByteArray());
+                while (buf.hasRemaining()) ch.write(buf);
+                ch.force(true);
+            }
+            Files.move(tmp, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty = true;
+            System.err.println("Index yazılamadı: " + indexFile + " -> " + e.getMessage());
+        }
+    }
+}
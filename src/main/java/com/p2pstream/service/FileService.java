@@ -3,14 +3,27 @@ package com.p2pstream.service;
 import com.p2pstream.model.VideoMetadata;
 import com.p2pstream.model.Constants;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.*;
 import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class FileService {
@@ -18,9 +31,47 @@ public class FileService {
     private final Path rootFolder;
     // Hash -> Metadata eşleşmesi (Hızlı erişim için)
     private final Map<String, VideoMetadata> localFiles = new ConcurrentHashMap<>();
+    private final Map<String, VideoMetadata> filesByName = new ConcurrentHashMap<>();
+    // Mutlak yol -> Metadata (silinen/değişen dosyayı bulmak için)
+    private final Map<String, VideoMetadata> filesByPath = new ConcurrentHashMap<>();
+
+    /** Kütüphaneye yeni (veya içeriği değişmiş) dosya eklendiğinde / dosya silindiğinde haber alır. */
+    public interface Listener {
+        void onFileAdded(VideoMetadata meta);
+        default void onFileRemoved(VideoMetadata meta) {}
+    }
+
+    // Dosya adı araması için trigram index'i (SEARCH_ENGINE=linear ise kullanılmaz)
+    private final TrigramIndex trigrams = new TrigramIndex();
+    private final boolean useTrigrams = !"linear".equalsIgnoreCase(Constants.SEARCH_ENGINE);
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private LibraryWatcher watcher;
+
+    // Kalıcı hash index'i: değişmeyen dosyalar her açılışta tekrar hash'lenmez
+    private final FileIndex index;
+
+    // Hash'leme bir seferde en fazla bu kadar byte map edilerek yapılır (CHUNK_SIZE'ın katı)
+    private static final long MAP_WINDOW = 64L * Constants.CHUNK_SIZE; // 16 MB
+
+    // --- TARAMA İSTATİSTİKLERİ (son tarama) ---
+    private final AtomicInteger scanFilesTotal = new AtomicInteger();
+    private final AtomicInteger scanFilesHashed = new AtomicInteger();
+    private final AtomicInteger scanFilesCached = new AtomicInteger();
+    private final AtomicLong scanBytesHashed = new AtomicLong();
+    private volatile long scanStartNanos = 0;
+    private volatile long scanElapsedNanos = 0;
+    private volatile boolean scanning = false;
+    private volatile long lastProgressLog = 0;
 
     public FileService(String rootFolderPath) {
+        this(rootFolderPath, Constants.INDEX_FILE);
+    }
+
+    public FileService(String rootFolderPath, String indexFilePath) {
         this.rootFolder = Paths.get(rootFolderPath);
+        this.index = new FileIndex(Paths.get(indexFilePath));
+        index.load();
         initialize();
     }
 
@@ -40,62 +91,264 @@ public class FileService {
         }
     }
 
-    // Klasördeki tüm dosyaları bul ve hash'le
-    public void scanFiles() {
+    // Klasördeki tüm dosyaları bul ve hash'le (sınırlı bir thread havuzunda, dosya başına bir iş)
+    public synchronized void scanFiles() {
+        List<Path> files;
         try (Stream<Path> paths = Files.walk(rootFolder)) {
-            paths.filter(Files::isRegularFile)
-                    .forEach(this::processFile);
+            files = paths.filter(Files::isRegularFile).collect(Collectors.toList());
         } catch (IOException e) {
             e.printStackTrace();
+            return;
+        }
+
+        scanFilesTotal.set(files.size());
+        scanFilesHashed.set(0);
+        scanFilesCached.set(0);
+        scanBytesHashed.set(0);
+        scanStartNanos = System.nanoTime();
+        scanning = true;
+
+        int threads = Math.max(1, Math.min(Constants.HASH_THREADS, files.size()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "file-hasher");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<?>> jobs = new ArrayList<>(files.size());
+            for (Path path : files) jobs.add(pool.submit(() -> processFile(path)));
+            for (Future<?> job : jobs) {
+                try {
+                    job.get();
+                } catch (Exception e) {
+                    System.err.println("Hash işi başarısız: " + e.getMessage());
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+            scanElapsedNanos = System.nanoTime() - scanStartNanos;
+            scanning = false;
+        }
+
+        Set<String> seen = new HashSet<>(files.size() * 2);
+        for (Path path : files) seen.add(indexKey(path));
+        for (String p : new ArrayList<>(filesByPath.keySet())) {
+            if (!seen.contains(p)) removeFiles(Paths.get(p));
         }
+        index.retainOnly(seen);
+        index.save();
+
+        System.out.println("📚 Tarama bitti: " + files.size() + " dosya (" + scanFilesHashed.get() + " hash'lendi, "
+                + scanFilesCached.get() + " index'ten) " + formatRate(scanBytesHashed.get(), scanFilesHashed.get(), scanElapsedNanos)
+                + " [" + threads + " thread]");
+    }
+
+    /** Son (veya süren) taramanın hızları: dosya/s ve MB/s, sadece gerçekten hash'lenen dosyalar üzerinden. */
+    public Map<String, Object> getScanStats() {
+        long elapsed = scanning ? System.nanoTime() - scanStartNanos : scanElapsedNanos;
+        double seconds = Math.max(elapsed, 1) / 1e9;
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("scanning", scanning);
+        stats.put("files", scanFilesTotal.get());
+        stats.put("hashed", scanFilesHashed.get());
+        stats.put("fromIndex", scanFilesCached.get());
+        stats.put("bytesHashed", scanBytesHashed.get());
+        stats.put("elapsedMs", elapsed / 1_000_000);
+        stats.put("filesPerSec", Math.round(scanFilesHashed.get() / seconds * 10) / 10.0);
+        stats.put("mbPerSec", Math.round(scanBytesHashed.get() / 1048576.0 / seconds * 10) / 10.0);
+        return stats;
+    }
+
+    private static String formatRate(long bytes, int files, long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        return String.format("%.1f dosya/s, %.1f MB/s", files / seconds, bytes / 1048576.0 / seconds);
+    }
+
+    // Uzun taramalarda saniyede en fazla bir kere ilerleme yaz
+    private void logProgress() {
+        long now = System.currentTimeMillis();
+        if (now - lastProgressLog < 1000) return;
+        lastProgressLog = now;
+        int done = scanFilesHashed.get() + scanFilesCached.get();
+        System.out.println("⏳ İndeksleniyor: " + done + "/" + scanFilesTotal.get() + " - "
+                + formatRate(scanBytesHashed.get(), scanFilesHashed.get(), System.nanoTime() - scanStartNanos));
     }
 
-    private void processFile(Path path) {
+    private static String indexKey(Path path) {
+        return path.toAbsolutePath().normalize().toString();
+    }
+
+    void processFile(Path path) {
         try {
             long size = Files.size(path);
             String fileName = path.getFileName().toString();
 
             // Chunk sayısını hesapla (Boyut / 256KB)
-            int chunks = (int) Math.ceil((double) size / (256 * 1024));
+            int chunks = (int) Math.ceil((double) size / Constants.CHUNK_SIZE);
 
-            // Hash hesapla (Zaman alabilir, büyük dosyalar için asenkron yapılabilir)
-            String hash = calculateSha256(path);
+            // Boyut ve mtime index'tekiyle aynıysa hash'i tekrar hesaplama
+            String key = indexKey(path);
+            long mtime = Files.getLastModifiedTime(path).toMillis();
+            FileIndex.Entry entry = index.lookup(key, size, mtime);
+            if (entry == null) {
+                // Hash hesapla (Zaman alabilir, büyük dosyalar için asenkron yapılabilir)
+                FileHashes hashes = calculateHashes(path);
+                entry = new FileIndex.Entry(key, size, mtime, hashes.fileHash, chunks,
+                        MerkleTree.rootHex(hashes.chunkHashes), hashes.chunkHashes);
+                index.put(entry);
+                scanFilesHashed.incrementAndGet();
+                scanBytesHashed.addAndGet(size);
+            } else {
+                scanFilesCached.incrementAndGet();
+            }
 
-            VideoMetadata meta = new VideoMetadata(hash, fileName, size, chunks);
-            localFiles.put(hash, meta); // Hash'i anahtar olarak kullanıyoruz
+            VideoMetadata meta = new VideoMetadata(entry.hash, fileName, size, entry.chunks,
+                    entry.merkleRoot, entry.chunkHashes);
+            register(key, meta);
 
             System.out.println("Dosya İndekslendi: " + meta);
+            if (scanning) logProgress();
 
         } catch (Exception e) {
             System.err.println("Dosya işlenemedi: " + path + " -> " + e.getMessage());
         }
     }
 
+    private static final class FileHashes {
+        final String fileHash;
+        final byte[] chunkHashes;
+
+        FileHashes(String fileHash, byte[] chunkHashes) {
+            this.fileHash = fileHash;
+            this.chunkHashes = chunkHashes;
+        }
+    }
+
     // PDF Gereksinimi: Hashing Mechanism (SHA-256)
-    private String calculateSha256(Path path) throws Exception {
+    // Tek geçişte hem tüm dosyanın hash'i hem de her chunk'ın hash'i (Merkle yaprakları) hesaplanır.
+    // Dosya MAP_WINDOW'luk pencerelerle map edilir; kopya yok, heap'e büyük tampon yok.
+    private FileHashes calculateHashes(Path path) throws Exception {
         MessageDigest digest = MessageDigest.getInstance("SHA-256");
-        try (InputStream fis = Files.newInputStream(path)) {
-            byte[] buffer = new byte[8192]; // 8KB buffer ile oku
-            int n = 0;
-            while ((n = fis.read(buffer)) != -1) {
-                digest.update(buffer, 0, n);
+        MessageDigest chunkDigest = MessageDigest.getInstance("SHA-256");
+        ByteArrayOutputStream chunkHashes = new ByteArrayOutputStream();
+
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            for (long pos = 0; pos < size; pos += MAP_WINDOW) {
+                long len = Math.min(MAP_WINDOW, size - pos);
+                MappedByteBuffer window = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                // Pencere CHUNK_SIZE'ın katı olduğu için chunk sınırları pencereyle hizalı
+                for (int off = 0; off < len; off += Constants.CHUNK_SIZE) {
+                    int take = (int) Math.min(Constants.CHUNK_SIZE, len - off);
+                    window.limit(off + take).position(off);
+                    digest.update(window.duplicate());
+                    chunkDigest.update(window);
+                    chunkHashes.write(chunkDigest.digest());
+                }
             }
         }
-        // Byte array'i Hex String'e çevir
-        StringBuilder hexString = new StringBuilder();
-        for (byte b : digest.digest()) {
-            String hex = Integer.toHexString(0xff & b);
-            if (hex.length() == 1) hexString.append('0');
-            hexString.append(hex);
+        return new FileHashes(MerkleTree.toHex(digest.digest()), chunkHashes.toByteArray());
+    }
+
+    // Yeni metadata'yı haritalara koy; yol daha önce başka içerikle kayıtlıysa eskisini çıkar
+    private void register(String key, VideoMetadata meta) {
+        VideoMetadata previous = filesByPath.put(key, meta);
+        if (previous != null) {
+            if (localFiles.remove(previous.getFileHash(), previous)) trigrams.remove(previous);
+            filesByName.remove(previous.getFileName(), previous);
+        }
+        localFiles.put(meta.getFileHash(), meta); // Hash'i anahtar olarak kullanıyoruz
+        filesByName.put(meta.getFileName(), meta);
+        trigrams.put(meta);
+
+        if (previous == null || !previous.getFileHash().equals(meta.getFileHash())) {
+            for (Listener l : listeners) l.onFileAdded(meta);
+        }
+    }
+
+    // Silinen dosya (veya klasör) altındaki tüm kayıtları çıkar
+    void removeFiles(Path path) {
+        String key = indexKey(path);
+        for (String p : new ArrayList<>(filesByPath.keySet())) {
+            if (!p.equals(key) && !p.startsWith(key + File.separator)) continue;
+            VideoMetadata meta = filesByPath.remove(p);
+            index.remove(p);
+            if (meta == null) continue;
+            if (localFiles.remove(meta.getFileHash(), meta)) trigrams.remove(meta);
+            filesByName.remove(meta.getFileName(), meta);
+            System.out.println("🗑️ Dosya kaldırıldı: " + meta);
+            for (Listener l : listeners) l.onFileRemoved(meta);
+        }
+    }
+
+    void saveIndex() {
+        index.save();
+    }
+
+    // --- ARTIMLI İNDEKSLEME ---
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /** Klasörü WatchService ile izlemeye başla; sonraki değişiklikler tam tarama olmadan işlenir. */
+    public synchronized void startWatching() {
+        if (watcher != null) return;
+        try {
+            watcher = new LibraryWatcher(this, rootFolder);
+            watcher.start();
+        } catch (IOException e) {
+            System.err.println("Klasör izleme başlatılamadı: " + e.getMessage());
+        }
+    }
+
+    public synchronized void stopWatching() {
+        if (watcher == null) return;
+        watcher.close();
+        watcher = null;
+    }
+
+    /**
+     * Doğrulanmış bir indirme paylaşılan klasöre taşındığında çağrılır. fileHash, dosyanın tamamının
+     * SHA-256'sıyla karşılaştırılmış olmalı; o zaman chunk hash'leri de bu içeriğe aittir ve dosya
+     * tekrar hash'lenmez. Hash bilinmiyorsa normal hash'leme yoluna düşülür.
+     */
+    public void addVerifiedFile(Path path, String fileHash, String merkleRoot, byte[] chunkHashes) {
+        if (fileHash == null || fileHash.isEmpty() || chunkHashes == null || merkleRoot == null) {
+            processFile(path);
+        } else {
+            try {
+                String key = indexKey(path);
+                long size = Files.size(path);
+                int chunks = (int) Math.ceil((double) size / Constants.CHUNK_SIZE);
+                long mtime = Files.getLastModifiedTime(path).toMillis();
+                index.put(new FileIndex.Entry(key, size, mtime, fileHash, chunks, merkleRoot, chunkHashes));
+                VideoMetadata meta = new VideoMetadata(fileHash, path.getFileName().toString(), size, chunks,
+                        merkleRoot, chunkHashes);
+                register(key, meta);
+                System.out.println("Dosya İndekslendi (indirme): " + meta);
+            } catch (IOException e) {
+                System.err.println("Dosya işlenemedi: " + path + " -> " + e.getMessage());
+                return;
+            }
         }
-        return hexString.toString();
+        index.save();
     }
 
-    // Arama yaparken bu listeyi kullanacağız
+    // Arama yaparken bu listeyi kullanacağız (boş sorgu = tüm dosyalar)
     public List<VideoMetadata> searchFiles(String queryName) {
+        return searchFiles(queryName, Integer.MAX_VALUE);
+    }
+
+    public List<VideoMetadata> searchFiles(String queryName, int limit) {
+        if (useTrigrams) return trigrams.search(queryName, limit);
+
+        // Eski doğrusal tarama; trigram motoruyla aynı sonucu versin diye aynı (Locale.ROOT) katlama
         List<VideoMetadata> results = new ArrayList<>();
+        String query = TrigramIndex.fold(queryName);
         for (VideoMetadata meta : localFiles.values()) {
-            if (meta.getFileName().toLowerCase().contains(queryName.toLowerCase())) {
+            if (results.size() >= limit) break;
+            if (TrigramIndex.fold(meta.getFileName()).contains(query)) {
                 results.add(meta);
             }
         }
@@ -106,4 +359,9 @@ public class FileService {
     public VideoMetadata getFileByHash(String hash) {
         return localFiles.get(hash);
     }
+
+    // Chunk sunucusu istekleri dosya adıyla gelir (ör. chunk hash listesi istenirken)
+    public VideoMetadata getFileByName(String fileName) {
+        return filesByName.get(fileName);
+    }
 }
\ No newline at end of file
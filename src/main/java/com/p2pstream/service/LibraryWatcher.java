@@ -0,0 +1,112 @@
+package com.p2pstream.service;
+
+import com.p2pstream.model.Constants;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Paylaşılan klasörü WatchService ile izler; tam tarama yapmadan sadece değişen dosyaları
+ * FileService'e bildirir. Kopyalanan büyük bir dosya art arda çok sayıda MODIFY üretir,
+ * bu yüzden her yol için son olaydan WATCH_DEBOUNCE_MS sonra tek bir kez işlem yapılır.
+ */
+final class LibraryWatcher extends Thread {
+
+    private final FileService fileService;
+    private final Path root;
+    private final WatchService watchService;
+    private final Map<WatchKey, Path> dirs = new ConcurrentHashMap<>();
+    // Yol -> bu zamandan (nanoTime) sonra işlenebilir
+    private final Map<Path, Long> pending = new ConcurrentHashMap<>();
+
+    LibraryWatcher(FileService fileService, Path root) throws IOException {
+        super("library-watcher");
+        setDaemon(true);
+        this.fileService = fileService;
+        this.root = root;
+        this.watchService = root.getFileSystem().newWatchService();
+        registerTree(root);
+    }
+
+    @Override
+    public void run() {
+        System.out.println("👀 Klasör izleniyor: " + root.toAbsolutePath());
+        try {
+            while (!isInterrupted()) {
+                WatchKey key = watchService.poll(pending.isEmpty() ? 1000 : Constants.WATCH_DEBOUNCE_MS / 2,
+                        TimeUnit.MILLISECONDS);
+                if (key != null) collect(key);
+                drain();
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // kapanıyor
+        }
+    }
+
+    private void collect(WatchKey key) {
+        Path dir = dirs.get(key);
+        if (dir != null) {
+            long due = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Constants.WATCH_DEBOUNCE_MS);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == OVERFLOW) {
+                    // Olaylar kaçtı: değişenleri bilmiyoruz, tam tarama (index sayesinde ucuz)
+                    fileService.scanFiles();
+                    continue;
+                }
+                Path child = dir.resolve((Path) event.context());
+                pending.put(child, due);
+            }
+        }
+        if (!key.reset()) dirs.remove(key);
+    }
+
+    // Süresi dolan yolları işle: var olan dosya -> hash'le, klasör -> izlemeye al, kaybolan -> sil
+    private void drain() {
+        long now = System.nanoTime();
+        boolean changed = false;
+        Iterator<Map.Entry<Path, Long>> it = pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<Path, Long> e = it.next();
+            if (e.getValue() - now > 0) continue;
+            it.remove();
+
+            Path path = e.getKey();
+            if (Files.isDirectory(path)) {
+                try {
+                    registerTree(path);
+                    try (Stream<Path> files = Files.walk(path)) {
+                        files.filter(Files::isRegularFile).forEach(fileService::processFile);
+                    }
+                } catch (IOException ex) {
+                    System.err.println("Klasör izlenemedi: " + path + " -> " + ex.getMessage());
+                }
+            } else if (Files.isRegularFile(path)) {
+                fileService.processFile(path);
+            } else {
+                fileService.removeFiles(path);
+            }
+            changed = true;
+        }
+        if (changed) fileService.saveIndex();
+    }
+
+    private void registerTree(Path start) throws IOException {
+        try (Stream<Path> paths = Files.walk(start)) {
+            for (Path dir : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                dirs.put(dir.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), dir);
+            }
+        }
+    }
+
+    void close() {
+        interrupt();
+        try { watchService.close(); } catch (IOException ignored) {}
+    }
+}
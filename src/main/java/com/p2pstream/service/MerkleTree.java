@@ -0,0 +1,79 @@
+package com.p2pstream.service;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * CHUNK_SIZE'lık parçaların SHA-256 hash'leri üzerine Merkle ağacı.
+ * Yapraklar chunk hash'leri (32 byte, art arda tek bir byte[] içinde),
+ * iç düğüm = SHA-256(sol || sağ); tek kalan düğüm bir üst seviyeye aynen çıkar.
+ */
+public final class MerkleTree {
+    private MerkleTree() {}
+
+    public static final int HASH_BYTES = 32;
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Tek bir chunk'ın hash'i; tamponun pozisyonu değişmez. */
+    public static byte[] hashChunk(ByteBuffer data) {
+        MessageDigest digest = newDigest();
+        digest.update(data.duplicate());
+        return digest.digest();
+    }
+
+    /** Gelen chunk verisi, güvenilen hash listesindeki yaprakla eşleşiyor mu? */
+    public static boolean verifyChunk(byte[] chunkHashes, int chunkIndex, ByteBuffer data) {
+        int from = chunkIndex * HASH_BYTES;
+        if (chunkHashes == null || from + HASH_BYTES > chunkHashes.length) return false;
+        return Arrays.equals(hashChunk(data), 0, HASH_BYTES, chunkHashes, from, from + HASH_BYTES);
+    }
+
+    public static byte[] root(byte[] chunkHashes) {
+        int count = chunkHashes.length / HASH_BYTES;
+        if (count == 0) return newDigest().digest();
+
+        byte[][] level = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            level[i] = Arrays.copyOfRange(chunkHashes, i * HASH_BYTES, (i + 1) * HASH_BYTES);
+        }
+
+        MessageDigest digest = newDigest();
+        while (count > 1) {
+            int parents = (count + 1) / 2;
+            for (int i = 0; i < parents; i++) {
+                int left = 2 * i;
+                if (left + 1 < count) {
+                    digest.update(level[left]);
+                    digest.update(level[left + 1]);
+                    level[i] = digest.digest();
+                } else {
+                    level[i] = level[left];
+                }
+            }
+            count = parents;
+        }
+        return level[0];
+    }
+
+    public static String rootHex(byte[] chunkHashes) {
+        return toHex(root(chunkHashes));
+    }
+
+    public static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(Character.forDigit((b >> 4) & 0xF, 16));
+            sb.append(Character.forDigit(b & 0xF, 16));
+        }
+        return sb.toString();
+    }
+}
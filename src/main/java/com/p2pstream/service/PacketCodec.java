@@ -1,71 +1,87 @@
 package com.p2pstream.service;
 
 import com.p2pstream.model.Constants;
-import com.p2pstream.model.MessageType;
 import com.p2pstream.net.udp.Packet;
+import com.p2pstream.net.udp.PacketView;
 
-import java.io.*;
-import java.util.UUID;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+// Format: [msb:8][lsb:8][type:4][ipLen:4][ip][port:4][ttl:4][dataLen:4][data]
 public final class PacketCodec {
     private PacketCodec() {}
-    public static byte[] encode(Packet p) throws IOException {
-        ByteArrayOutputStream bos = new ByteArrayOutputStream();
-        DataOutputStream dos = new DataOutputStream(bos);
-
-        dos.writeLong(p.messageId.getMostSignificantBits());
-        dos.writeLong(p.messageId.getLeastSignificantBits());
 
-        dos.writeInt(p.messageType.ordinal());
+    private static final int FIXED_BYTES = 8 + 8 + 4 + 4 + 4 + 4 + 4;
 
-        writeString(dos, p.myIp);
-        dos.writeInt(p.myPort);
+    // Kendi IP'miz her pakette yazılıyor; byte hali bir kere hesaplanır
+    private static final Map<String, byte[]> ipBytes = new ConcurrentHashMap<>();
 
-        dos.writeInt(p.ttl);
+    // Gönderim için thread başına tek direct tampon (kanal heap tamponunu bir daha kopyalamasın)
+    private static final ThreadLocal<ByteBuffer> sendBuffers = ThreadLocal.withInitial(
+            () -> ByteBuffer.allocateDirect(FIXED_BYTES + 4096 + Constants.MAX_UDP_PACKET_BYTES));
 
-        dos.writeInt(p.data.length);
-        dos.write(p.data);
+    // decode(byte[]) çağıranlar için thread başına tek görünüm
+    private static final ThreadLocal<PacketView> views = ThreadLocal.withInitial(PacketView::new);
 
-        dos.flush();
-        return bos.toByteArray();
+    public static int encodedSize(Packet p) {
+        return FIXED_BYTES + ip(p.myIp).length + p.data.length;
     }
 
-    public static Packet decode(byte[] bytes, int length) throws IOException {
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes, 0, length));
-
-        long msb = dis.readLong();
-        long lsb = dis.readLong();
-        UUID messageId = new UUID(msb, lsb);
-
-        int typeOrd = dis.readInt();
-        MessageType type = MessageType.values()[typeOrd];
-
-        String myIp = readString(dis);
-        int myPort = dis.readInt();
-
-        int ttl = dis.readInt();
+    /** Tam boyutlu tek bir dizi ayırır ve paketi içine yazar. */
+    public static byte[] encode(Packet p) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(encodedSize(p));
+        encode(p, buf);
+        return buf.array();
+    }
 
-        int dataLen = dis.readInt();
-        if (dataLen < 0 || dataLen > Constants.MAX_UDP_PACKET_BYTES) {
-            throw new IOException("Invalid dataLen=" + dataLen);
+    /** Paketi dst'nin pozisyonundan itibaren yazar (havuzdan/thread-local tampon için). */
+    public static void encode(Packet p, ByteBuffer dst) throws IOException {
+        if (p.data.length > Constants.MAX_UDP_PACKET_BYTES) throw new IOException("Invalid dataLen=" + p.data.length);
+        byte[] ip = ip(p.myIp);
+        try {
+            dst.putLong(p.messageId.getMostSignificantBits());
+            dst.putLong(p.messageId.getLeastSignificantBits());
+            dst.putInt(p.messageType.ordinal());
+            dst.putInt(ip.length).put(ip);
+            dst.putInt(p.myPort);
+            dst.putInt(p.ttl);
+            dst.putInt(p.data.length).put(p.data);
+        } catch (BufferOverflowException e) {
+            throw new IOException("Buffer too small for packet", e);
         }
-        byte[] data = new byte[dataLen];
-        dis.readFully(data);
+    }
 
-        return new Packet(messageId, type, myIp, myPort, ttl, data);
+    /**
+     * Paketi thread'e ait direct tampona yazar ve okunmaya hazır (flip edilmiş) tamponu döner.
+     * Tampon aynı thread'de bir sonraki encodeShared çağrısına kadar geçerlidir.
+     */
+    public static ByteBuffer encodeShared(Packet p) throws IOException {
+        ByteBuffer buf = sendBuffers.get();
+        buf.clear();
+        encode(p, buf);
+        buf.flip();
+        return buf;
+    }
+
+    public static Packet decode(byte[] bytes, int length) throws IOException {
+        return views.get().wrap(ByteBuffer.wrap(bytes, 0, length)).toPacket();
     }
 
-    private static void writeString(DataOutputStream dos, String s) throws IOException {
-        byte[] b = (s == null ? "" : s).getBytes();
-        dos.writeInt(b.length);
-        dos.write(b);
+    /** Kopyasız çözümleme: dönen görünüm view'ın kendisidir ve buf üzerinde çalışır. */
+    public static PacketView decode(ByteBuffer buf, PacketView view) throws IOException {
+        return view.wrap(buf);
     }
 
-    private static String readString(DataInputStream dis) throws IOException {
-        int len = dis.readInt();
-        if (len < 0 || len > 4096) throw new IOException("Invalid string len=" + len);
-        byte[] b = new byte[len];
-        dis.readFully(b);
-        return new String(b);
+    private static byte[] ip(String s) {
+        if (s == null) return new byte[0];
+        byte[] cached = ipBytes.get(s);
+        if (cached != null) return cached;
+        byte[] b = s.getBytes(StandardCharsets.UTF_8);
+        if (ipBytes.size() < 1024) ipBytes.put(s, b); // sınırsız büyümesin
+        return b;
     }
 }
@@ -0,0 +1,291 @@
+package com.p2pstream.service;
+
+import com.p2pstream.model.Constants;
+import com.p2pstream.net.tcp.ChunkAvailability;
+import org.eclipse.jetty.server.HttpOutput;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+/**
+ * /api/watch için HTTP Range servisi: Range başlığı ayrıştırma (çoklu aralık ve "bytes=-N"
+ * sonek aralığı dahil) ve dosyadan FileChannel konumsal okuma ile havuzdan alınan direct
+ * buffer'a, oradan (Jetty'de) kopyasız çıkışa yazma. İndirmesi süren dosyada her chunk okunmadan
+ * önce diske inmesi beklenir; bu bekleme asenkrondur (thread tutmaz).
+ */
+public final class RangeStreamer {
+    private RangeStreamer() {}
+
+    // Daha fazla aralık isteyen başlık yok sayılır (tüm dosya servis edilir), RFC 7233'e uygun
+    public static final int MAX_RANGES = 16;
+
+    public static final class Range {
+        public final long start;
+        public final long end; // dahil
+
+        public Range(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long length() { return end - start + 1; }
+
+        public String contentRange(long fileLength) {
+            return "bytes " + start + "-" + end + "/" + fileLength;
+        }
+    }
+
+    /** Çıkış: ByteBuffer'ı tamamen yazar. */
+    public interface Sink {
+        void write(ByteBuffer src) throws IOException;
+    }
+
+    // --- RANGE AYRIŞTIRMA ---
+
+    /**
+     * Range başlığını ayrıştırır. Başlık yoksa, bozuksa veya çok fazla aralık varsa null
+     * (tüm dosya, 200); hiçbir aralık karşılanamıyorsa boş liste (416).
+     */
+    public static List<Range> parse(String header, long fileLength) {
+        if (header == null || !header.trim().startsWith("bytes=")) return null;
+        String[] specs = header.trim().substring(6).split(",");
+        if (specs.length > MAX_RANGES) return null;
+
+        List<Range> ranges = new ArrayList<>(specs.length);
+        for (String raw : specs) {
+            String spec = raw.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) return null;
+            try {
+                if (dash == 0) {
+                    // Sonek: son N byte
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0 || fileLength == 0) continue;
+                    ranges.add(new Range(Math.max(0, fileLength - suffix), fileLength - 1));
+                } else {
+                    long start = Long.parseLong(spec.substring(0, dash));
+                    String endPart = spec.substring(dash + 1);
+                    long end = endPart.isEmpty() ? fileLength - 1 : Long.parseLong(endPart);
+                    if (start < 0 || (!endPart.isEmpty() && end < start)) return null;
+                    if (start >= fileLength) continue;
+                    ranges.add(new Range(start, Math.min(end, fileLength - 1)));
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return ranges;
+    }
+
+    // --- KOPYALAMA ---
+
+    /** Jetty'nin HttpOutput'u direct buffer'ı heap'e kopyalamadan yazar; diğer akışlar için ara dizi. */
+    public static Sink sinkFor(OutputStream out) {
+        if (out instanceof HttpOutput http) return http::write;
+        byte[] tmp = new byte[64 * 1024];
+        return src -> {
+            while (src.hasRemaining()) {
+                int n = Math.min(src.remaining(), tmp.length);
+                src.get(tmp, 0, n);
+                out.write(tmp, 0, n);
+            }
+        };
+    }
+
+    /**
+     * [position, position + length) aralığını sink'e yazar; chunk sınırlarında bölünür. onProgress
+     * her yazımdan sonra yeni konumla çağrılır (oynatma noktası, TTFB ölçümü için; null olabilir).
+     * Dosyanın tamamı diskte olmalı; indirmesi süren dosya için copyAsync.
+     */
+    public static long copy(FileChannel channel, long position, long length, Sink sink, LongConsumer onProgress)
+            throws IOException {
+        ChunkBufferPool pool = ChunkBufferPool.SHARED;
+        ByteBuffer buf = pool.acquire();
+        try {
+            long end = position + length;
+            for (long pos = position; pos < end; ) pos = copyChunk(channel, pos, end, buf, sink, onProgress);
+            return length;
+        } finally {
+            pool.release(buf);
+        }
+    }
+
+    /**
+     * Asenkron kopyanın iptal tutamacı: o an beklenen chunk future'ını tutar. İstemci gidince
+     * cancel() bekleyişi iptal eder (ChunkAvailability'de kopya kalmaz) ve kopya IOException ile biter.
+     */
+    public static final class StreamHandle {
+        private volatile boolean cancelled = false;
+        private volatile CompletableFuture<Void> waiting;
+
+        public void cancel() {
+            cancelled = true;
+            CompletableFuture<Void> w = waiting;
+            if (w != null) w.cancel(false);
+        }
+
+        public boolean isCancelled() { return cancelled; }
+
+        // cancel() ile yarışırsa iki taraftan biri mutlaka iptal eder
+        private CompletableFuture<Void> track(CompletableFuture<Void> waiter) {
+            waiting = waiter;
+            if (cancelled) waiter.cancel(false);
+            return waiter;
+        }
+    }
+
+    /**
+     * İndirmesi süren dosya için copy: inmiş chunk'lar hemen yazılır, inmemiş bir chunk'ta hiçbir
+     * thread bloklanmaz; chunk inince kopya executor'da kaldığı yerden devam eder. Böylece giden
+     * (seek/kapatma) bir izleyici beklerken bir Jetty thread'i tutmaz. Buffer da beklerken havuza
+     * döner. Chunk WATCH_CHUNK_TIMEOUT_MS içinde inmezse veya handle iptal edilirse future
+     * IOException ile biter.
+     */
+    public static CompletableFuture<Void> copyAsync(FileChannel channel, long position, long length,
+                                                    ChunkAvailability availability, Sink sink,
+                                                    LongConsumer onProgress, Executor executor, StreamHandle handle) {
+        return resume(channel, position, position + length, availability, sink, onProgress, executor, handle);
+    }
+
+    private static CompletableFuture<Void> resume(FileChannel channel, long position, long end,
+                                                  ChunkAvailability availability, Sink sink,
+                                                  LongConsumer onProgress, Executor executor, StreamHandle handle) {
+        if (handle.isCancelled()) return CompletableFuture.failedFuture(new IOException("Stream closed"));
+        ChunkBufferPool pool = ChunkBufferPool.SHARED;
+        ByteBuffer buf = pool.acquire();
+        long pos = position;
+        try {
+            while (pos < end) {
+                int chunk = (int) (pos / Constants.CHUNK_SIZE);
+                if (!availability.isAvailable(chunk)) break;
+                pos = copyChunk(channel, pos, end, buf, sink, onProgress);
+            }
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        } finally {
+            pool.release(buf);
+        }
+        if (pos >= end) return CompletableFuture.completedFuture(null);
+
+        int chunk = (int) (pos / Constants.CHUNK_SIZE);
+        long next = pos;
+        long waitStart = System.nanoTime();
+        return handle.track(availability.whenAvailable(chunk))
+                .orTimeout(Constants.WATCH_CHUNK_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+                .handle((v, e) -> {
+                    if (e == null) {
+                        StreamMetrics.recordChunkWait((System.nanoTime() - waitStart) / 1_000_000);
+                        return null;
+                    }
+                    throw new CompletionException(waitFailure(chunk, e));
+                })
+                .thenComposeAsync(v -> resume(channel, next, end, availability, sink, onProgress, executor, handle), executor);
+    }
+
+    private static IOException waitFailure(int chunkIndex, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof TimeoutException) {
+            StreamMetrics.recordChunkWaitTimeout();
+            return new IOException("Chunk " + chunkIndex + " did not arrive in " + Constants.WATCH_CHUNK_TIMEOUT_MS + " ms");
+        }
+        if (cause instanceof CancellationException) return new IOException("Stream closed while waiting for chunk " + chunkIndex);
+        if (cause instanceof IOException io) return io;
+        return new IOException(cause.getMessage(), cause);
+    }
+
+    // pos'taki chunk'ın (end ile sınırlı) kalanını okuyup yazar; yeni konumu döner
+    private static long copyChunk(FileChannel channel, long pos, long end, ByteBuffer buf, Sink sink,
+                                  LongConsumer onProgress) throws IOException {
+        long chunkEnd = (pos / Constants.CHUNK_SIZE + 1) * Constants.CHUNK_SIZE;
+        int n = (int) Math.min(Math.min(end, chunkEnd) - pos, buf.capacity());
+        buf.clear().limit(n);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf, pos + buf.position()) < 0) {
+                throw new EOFException("File ended at " + (pos + buf.position()));
+            }
+        }
+        buf.flip();
+        sink.write(buf);
+        if (onProgress != null) onProgress.accept(pos + n);
+        return pos + n;
+    }
+
+    // --- MULTIPART/BYTERANGES ---
+
+    public static String newBoundary() {
+        return "P2PSTREAM_" + Long.toHexString(ThreadLocalRandom.current().nextLong());
+    }
+
+    private static byte[] partHeader(String boundary, String contentType, Range r, long fileLength, boolean first) {
+        String header = (first ? "" : "\r\n") + "--" + boundary + "\r\n"
+                + "Content-Type: " + contentType + "\r\n"
+                + "Content-Range: " + r.contentRange(fileLength) + "\r\n\r\n";
+        return header.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] closing(String boundary) {
+        return ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /** Content-Length için multipart gövdenin toplam boyu. */
+    public static long multipartLength(List<Range> ranges, String boundary, String contentType, long fileLength) {
+        long total = closing(boundary).length;
+        for (int i = 0; i < ranges.size(); i++) {
+            total += partHeader(boundary, contentType, ranges.get(i), fileLength, i == 0).length + ranges.get(i).length();
+        }
+        return total;
+    }
+
+    public static void writeMultipart(FileChannel channel, List<Range> ranges, String boundary, String contentType,
+                                      long fileLength, Sink sink, LongConsumer onProgress) throws IOException {
+        for (int i = 0; i < ranges.size(); i++) {
+            Range r = ranges.get(i);
+            sink.write(ByteBuffer.wrap(partHeader(boundary, contentType, r, fileLength, i == 0)));
+            copy(channel, r.start, r.length(), sink, onProgress);
+        }
+        sink.write(ByteBuffer.wrap(closing(boundary)));
+    }
+
+    /** writeMultipart'ın indirmesi süren dosya için hali (bkz. copyAsync). */
+    public static CompletableFuture<Void> writeMultipartAsync(FileChannel channel, List<Range> ranges, String boundary,
+                                                              String contentType, long fileLength,
+                                                              ChunkAvailability availability, Sink sink,
+                                                              LongConsumer onProgress, Executor executor,
+                                                              StreamHandle handle) {
+        CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
+        for (int i = 0; i < ranges.size(); i++) {
+            Range r = ranges.get(i);
+            byte[] header = partHeader(boundary, contentType, r, fileLength, i == 0);
+            done = done.thenCompose(v -> {
+                try {
+                    sink.write(ByteBuffer.wrap(header));
+                } catch (IOException e) {
+                    return CompletableFuture.failedFuture(e);
+                }
+                return copyAsync(channel, r.start, r.length(), availability, sink, onProgress, executor, handle);
+            });
+        }
+        return done.thenCompose(v -> {
+            try {
+                sink.write(ByteBuffer.wrap(closing(boundary)));
+                return CompletableFuture.<Void>completedFuture(null);
+            } catch (IOException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+        });
+    }
+}
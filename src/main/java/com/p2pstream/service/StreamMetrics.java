@@ -0,0 +1,56 @@
+package com.p2pstream.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * /api/watch ölçümleri: oynatma noktasını taşıyan Range isteği (seek) geldikten sonra ilk byte'ın
+ * istemciye verilmesine kadar geçen süre (time-to-first-byte) ve okuyucunun
+ * henüz inmemiş chunk'ı beklediği süreler.
+ */
+public final class StreamMetrics {
+    private StreamMetrics() {}
+
+    private static final AtomicLong seekCount = new AtomicLong();
+    private static final AtomicLong totalTtfbMs = new AtomicLong();
+    private static final AtomicLong maxTtfbMs = new AtomicLong();
+    private static volatile long lastTtfbMs = -1;
+
+    private static final AtomicLong chunkWaits = new AtomicLong();
+    private static final AtomicLong totalChunkWaitMs = new AtomicLong();
+    private static final AtomicLong maxChunkWaitMs = new AtomicLong();
+    private static final AtomicLong chunkWaitTimeouts = new AtomicLong();
+
+    public static void recordSeekTtfb(long millis) {
+        seekCount.incrementAndGet();
+        totalTtfbMs.addAndGet(millis);
+        maxTtfbMs.accumulateAndGet(millis, Math::max);
+        lastTtfbMs = millis;
+    }
+
+    public static void recordChunkWait(long millis) {
+        chunkWaits.incrementAndGet();
+        totalChunkWaitMs.addAndGet(millis);
+        maxChunkWaitMs.accumulateAndGet(millis, Math::max);
+    }
+
+    public static void recordChunkWaitTimeout() {
+        chunkWaitTimeouts.incrementAndGet();
+    }
+
+    public static Map<String, Object> snapshot() {
+        long count = seekCount.get();
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("seeks", count);
+        m.put("lastTtfbMs", lastTtfbMs);
+        m.put("avgTtfbMs", count == 0 ? 0 : totalTtfbMs.get() / count);
+        m.put("maxTtfbMs", maxTtfbMs.get());
+        long waits = chunkWaits.get();
+        m.put("chunkWaits", waits);
+        m.put("avgChunkWaitMs", waits == 0 ? 0 : totalChunkWaitMs.get() / waits);
+        m.put("maxChunkWaitMs", maxChunkWaitMs.get());
+        m.put("chunkWaitTimeouts", chunkWaitTimeouts.get());
+        return m;
+    }
+}
@@ -0,0 +1,113 @@
+package com.p2pstream.service;
+
+import com.p2pstream.model.VideoMetadata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dosya adları üzerinde küçük harfe çevrilmiş trigram ters index'i: trigram -> o trigramı
+ * içeren dosyaların hash'leri. Alt dizi aramasında sadece sorgunun en nadir trigramını içeren
+ * dosyalar kontrol edilir; 3 karakterden kısa sorgular önceden küçültülmüş adlar üzerinde taranır.
+ * Yazma metotları senkron, okumalar kilitsizdir.
+ */
+final class TrigramIndex {
+
+    private static final class Doc {
+        final VideoMetadata meta;
+        final String folded;
+
+        Doc(VideoMetadata meta, String folded) {
+            this.meta = meta;
+            this.folded = folded;
+        }
+    }
+
+    // Hash -> Doc (FileService.localFiles ile aynı anahtar)
+    private final Map<String, Doc> docs = new ConcurrentHashMap<>();
+    private final Map<Long, Set<String>> postings = new ConcurrentHashMap<>();
+
+    static String fold(String s) {
+        return s.toLowerCase(Locale.ROOT);
+    }
+
+    // Üç UTF-16 karakteri tek bir long anahtara paketle
+    private static long trigram(String s, int i) {
+        return ((long) s.charAt(i) << 32) | ((long) s.charAt(i + 1) << 16) | s.charAt(i + 2);
+    }
+
+    // --- GÜNCELLEME ---
+
+    synchronized void put(VideoMetadata meta) {
+        Doc doc = new Doc(meta, fold(meta.getFileName()));
+        Doc old = docs.put(meta.getFileHash(), doc);
+        if (old != null) unlink(meta.getFileHash(), old);
+        for (int i = 0; i + 3 <= doc.folded.length(); i++) {
+            postings.computeIfAbsent(trigram(doc.folded, i), k -> ConcurrentHashMap.newKeySet()).add(meta.getFileHash());
+        }
+    }
+
+    /** Sadece index'teki kayıt hâlâ bu metadata ise çıkarır. */
+    synchronized void remove(VideoMetadata meta) {
+        String hash = meta.getFileHash();
+        Doc doc = docs.get(hash);
+        if (doc == null || doc.meta != meta) return;
+        docs.remove(hash);
+        unlink(hash, doc);
+    }
+
+    private void unlink(String hash, Doc doc) {
+        for (int i = 0; i + 3 <= doc.folded.length(); i++) {
+            long key = trigram(doc.folded, i);
+            Set<String> set = postings.get(key);
+            if (set != null) {
+                set.remove(hash);
+                if (set.isEmpty()) postings.remove(key);
+            }
+        }
+    }
+
+    // --- ARAMA ---
+
+    List<VideoMetadata> search(String query, int limit) {
+        if (limit <= 0) return Collections.emptyList();
+        String q = fold(query);
+        List<VideoMetadata> results = new ArrayList<>();
+
+        if (q.length() < 3) {
+            // Trigram yok: küçültülmüş adlar üzerinde tara (boş sorgu = tüm dosyalar)
+            for (Doc doc : docs.values()) {
+                if (doc.folded.contains(q)) {
+                    results.add(doc.meta);
+                    if (results.size() >= limit) break;
+                }
+            }
+            return results;
+        }
+
+        // En az dosyada geçen trigramdan başla; diğer trigramlar ve contains ile ele
+        Set<String> smallest = null;
+        for (int i = 0; i + 3 <= q.length(); i++) {
+            Set<String> set = postings.get(trigram(q, i));
+            if (set == null) return results;
+            if (smallest == null || set.size() < smallest.size()) smallest = set;
+        }
+        for (String hash : smallest) {
+            Doc doc = docs.get(hash);
+            if (doc != null && doc.folded.contains(q)) {
+                results.add(doc.meta);
+                if (results.size() >= limit) break;
+            }
+        }
+        return results;
+    }
+
+    int size() {
+        return docs.size();
+    }
+}
@@ -0,0 +1,86 @@
+package com.p2pstream.net.tcp;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private File dataFile() throws IOException {
+        Path data = dir.resolve("video.mp4");
+        Files.write(data, new byte[1000]);
+        return data.toFile();
+    }
+
+    private File journalFile(File data) {
+        return new File(data.getPath() + ChunkJournal.SUFFIX);
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        File data = dataFile();
+        ChunkJournal journal = ChunkJournal.openOrCreate(data, "video.mp4", "abc", 1000, 10, "root", List.of("10.0.0.1"));
+        journal.markDone(2);
+        journal.markDone(7);
+        journal.flush();
+
+        ChunkJournal loaded = ChunkJournal.load(journalFile(data));
+        assertNotNull(loaded);
+        assertEquals("video.mp4", loaded.getFileName());
+        assertEquals("abc", loaded.getFileHash());
+        assertEquals(1000, loaded.getTotalSize());
+        assertEquals("root", loaded.getMerkleRoot());
+        assertEquals(List.of("10.0.0.1"), loaded.getPeers());
+        BitSet expected = new BitSet();
+        expected.set(2);
+        expected.set(7);
+        assertEquals(expected, loaded.completed());
+        assertFalse(new File(journalFile(data).getPath() + ".tmp").exists());
+    }
+
+    @Test
+    void resumesOnlyForSameFile() throws IOException {
+        File data = dataFile();
+        ChunkJournal journal = ChunkJournal.openOrCreate(data, "video.mp4", "abc", 1000, 10, null, List.of("a"));
+        journal.markDone(1);
+        journal.flush();
+
+        assertTrue(ChunkJournal.openOrCreate(data, "video.mp4", "ABC", 1000, 10, null, List.of("b")).completed().get(1));
+        assertTrue(ChunkJournal.openOrCreate(data, "video.mp4", "other", 1000, 10, null, List.of("b")).completed().isEmpty());
+    }
+
+    @Test
+    void crcMismatchIsRejected() throws IOException {
+        File data = dataFile();
+        ChunkJournal.openOrCreate(data, "video.mp4", "abc", 1000, 10, null, List.of("a")).flush();
+        byte[] bytes = Files.readAllBytes(journalFile(data).toPath());
+        bytes[10] ^= 1;
+        Files.write(journalFile(data).toPath(), bytes);
+
+        assertNull(ChunkJournal.load(journalFile(data)));
+    }
+
+    @Test
+    void truncatedFileIsRejected() throws IOException {
+        File data = dataFile();
+        ChunkJournal.openOrCreate(data, "video.mp4", "abc", 1000, 10, null, List.of("a")).flush();
+        byte[] bytes = Files.readAllBytes(journalFile(data).toPath());
+        Files.write(journalFile(data).toPath(), Arrays.copyOf(bytes, bytes.length / 2));
+        assertNull(ChunkJournal.load(journalFile(data)));
+
+        Files.write(journalFile(data).toPath(), new byte[4]);
+        assertNull(ChunkJournal.load(journalFile(data)));
+    }
+}
@@ -0,0 +1,110 @@
+package com.p2pstream.net.tcp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ChunkSchedulerTest {
+
+    @Test
+    void handsOutChunksInOrderAndFinishes() {
+        ChunkScheduler s = new ChunkScheduler(3, List.of("a"), 0);
+        for (int i = 0; i < 3; i++) {
+            assertEquals(i, s.next("a"));
+            assertTrue(s.complete(i, "a"));
+        }
+        assertTrue(s.isComplete());
+        assertEquals(ChunkScheduler.DONE, s.next("a"));
+    }
+
+    @Test
+    void endgameHandsInFlightChunkToIdlePeerAndFirstCopyWins() {
+        ChunkScheduler s = new ChunkScheduler(2, List.of("a", "b"), 2);
+        assertEquals(0, s.next("a"));
+        assertEquals(1, s.next("b"));
+
+        // Bekleyen iş yok, eksik sayısı eşikte: a, b'nin chunk'ını da ister
+        assertEquals(1, s.next("a"));
+        assertTrue(s.complete(1, "a"));
+        assertFalse(s.complete(1, "b"));
+        assertEquals(0, s.next("b"));
+    }
+
+    @Test
+    void noEndgameAboveThreshold() {
+        ChunkScheduler s = new ChunkScheduler(2, List.of("a", "b"), 1);
+        assertEquals(0, s.next("a"));
+        assertEquals(1, s.next("b"));
+        assertEquals(ChunkScheduler.WAIT, s.next("a"));
+    }
+
+    @Test
+    void releaseReturnsChunkToPool() {
+        ChunkScheduler s = new ChunkScheduler(2, List.of("a", "b"), 0);
+        assertEquals(0, s.next("a"));
+        s.release(0, "a");
+        assertEquals(0, s.next("a"));
+    }
+
+    @Test
+    void rejectedChunkGoesToAnotherPeer() {
+        ChunkScheduler s = new ChunkScheduler(2, List.of("a", "b"), 0);
+        assertEquals(0, s.next("a"));
+        s.reject(0, "a");
+        assertEquals(1, s.next("a"));
+        assertEquals(0, s.next("b"));
+    }
+
+    @Test
+    void onlyPeerRejectingChunkGetsDone() {
+        ChunkScheduler s = new ChunkScheduler(1, List.of("a"), 0);
+        assertEquals(0, s.next("a"));
+        s.reject(0, "a");
+        assertEquals(ChunkScheduler.DONE, s.next("a"));
+    }
+
+    @Test
+    void writeFailedReturnsQueuedChunkToPool() {
+        ChunkScheduler s = new ChunkScheduler(1, List.of("a"), 0);
+        assertEquals(0, s.next("a"));
+        assertTrue(s.queueForWrite(0, "a"));
+        assertFalse(s.isDone(0));
+        // Kuyruktaki chunk yazılana kadar iş bitmiş sayılmaz
+        assertEquals(ChunkScheduler.WAIT, s.next("a"));
+
+        s.writeFailed(0);
+        assertEquals(0, s.next("a"));
+        assertTrue(s.queueForWrite(0, "a"));
+        s.writeDone(0);
+        assertTrue(s.isComplete());
+    }
+
+    @Test
+    void duplicateQueueForWriteIsRefused() {
+        ChunkScheduler s = new ChunkScheduler(1, List.of("a", "b"), 1);
+        assertEquals(0, s.next("a"));
+        assertEquals(0, s.next("b"));
+        assertTrue(s.queueForWrite(0, "a"));
+        assertFalse(s.queueForWrite(0, "b"));
+    }
+
+    @Test
+    void playheadWindowIsServedFirst() {
+        ChunkScheduler s = new ChunkScheduler(10, List.of("a"), 0);
+        s.setPlayhead(6, 2);
+        assertEquals(6, s.next("a"));
+        assertEquals(7, s.next("a"));
+        assertEquals(0, s.next("a"));
+    }
+
+    @Test
+    void removedPeerReleasesItsChunks() {
+        ChunkScheduler s = new ChunkScheduler(2, List.of("a", "b"), 0);
+        assertEquals(0, s.next("a"));
+        s.removePeer("a");
+        assertEquals(ChunkScheduler.DONE, s.next("a"));
+        assertEquals(0, s.next("b"));
+    }
+}
@@ -0,0 +1,74 @@
+package com.p2pstream.net.udp;
+
+import com.p2pstream.model.VideoMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplyBatchTest {
+
+    private static String hex(int seed) {
+        return String.format("%064x", seed);
+    }
+
+    private static VideoMetadata file(int i, boolean withRoot) {
+        return new VideoMetadata(hex(i), "video_" + i + "_ç.mp4", 1000L * i, 1, withRoot ? hex(1000 + i) : null, null);
+    }
+
+    @Test
+    void encodeDecodeRoundTrip() throws IOException {
+        List<VideoMetadata> files = List.of(file(1, true), file(2, false));
+        List<byte[]> payloads = ReplyBatch.encode("10.0.0.5", 5000, files, 1400);
+        assertEquals(1, payloads.size());
+        assertTrue(ReplyBatch.isBatch(payloads.get(0)));
+
+        List<ReplyBatch.Entry> entries = ReplyBatch.decode(payloads.get(0));
+        assertEquals(2, entries.size());
+        for (int i = 0; i < files.size(); i++) {
+            ReplyBatch.Entry e = entries.get(i);
+            VideoMetadata meta = files.get(i);
+            assertEquals("10.0.0.5", e.sourceIp);
+            assertEquals(5000, e.sourcePort);
+            assertEquals(meta.getFileHash(), e.fileHash);
+            assertEquals(meta.getFileName(), e.fileName);
+            assertEquals(meta.getFileSize(), e.fileSize);
+            assertEquals(meta.getMerkleRoot(), e.merkleRoot);
+        }
+    }
+
+    @Test
+    void splitsAtDatagramLimit() throws IOException {
+        List<VideoMetadata> files = new ArrayList<>();
+        for (int i = 1; i <= 50; i++) files.add(file(i, i % 2 == 0));
+        int maxBytes = 512;
+
+        List<byte[]> payloads = ReplyBatch.encode("10.0.0.5", 5000, files, maxBytes);
+        assertTrue(payloads.size() > 1);
+        List<String> decoded = new ArrayList<>();
+        for (byte[] p : payloads) {
+            assertTrue(p.length <= maxBytes, "payload " + p.length + " > " + maxBytes);
+            for (ReplyBatch.Entry e : ReplyBatch.decode(p)) decoded.add(e.fileHash);
+        }
+        assertEquals(files.stream().map(VideoMetadata::getFileHash).toList(), decoded);
+    }
+
+    @Test
+    void skipsEntriesThatCannotFitOrHaveBadHash() throws IOException {
+        VideoMetadata huge = new VideoMetadata(hex(9), "x".repeat(600), 1, 1);
+        VideoMetadata badHash = new VideoMetadata("not-hex", "bad.mp4", 1, 1);
+        List<byte[]> payloads = ReplyBatch.encode("10.0.0.5", 5000, List.of(huge, badHash, file(1, false)), 512);
+        assertEquals(1, payloads.size());
+        assertEquals(List.of(hex(1)), ReplyBatch.decode(payloads.get(0)).stream().map(e -> e.fileHash).toList());
+    }
+
+    @Test
+    void truncatedPayloadIsRejected() {
+        byte[] payload = ReplyBatch.encode("10.0.0.5", 5000, List.of(file(1, true)), 1400).get(0);
+        assertThrows(IOException.class, () -> ReplyBatch.decode(Arrays.copyOf(payload, payload.length - 5)));
+    }
+}
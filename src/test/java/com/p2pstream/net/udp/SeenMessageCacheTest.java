@@ -0,0 +1,49 @@
+package com.p2pstream.net.udp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeenMessageCacheTest {
+
+    @Test
+    void addReportsDuplicates() {
+        SeenMessageCache cache = new SeenMessageCache(64, 60_000);
+        UUID id = UUID.randomUUID();
+        assertTrue(cache.add(id));
+        assertFalse(cache.add(id));
+        assertTrue(cache.contains(id));
+        assertFalse(cache.contains(UUID.randomUUID()));
+    }
+
+    @Test
+    void idSurvivesOneRotationAndIsForgottenAfterTwo() throws InterruptedException {
+        SeenMessageCache cache = new SeenMessageCache(64, 20);
+        UUID id = UUID.randomUUID();
+        cache.add(id);
+
+        Thread.sleep(30);
+        assertTrue(cache.contains(id)); // current -> previous
+        Thread.sleep(30);
+        assertFalse(cache.contains(id)); // previous atıldı
+        assertEquals(2L, cache.snapshot().get("rotations"));
+    }
+
+    @Test
+    void fullGenerationRotatesEarly() {
+        SeenMessageCache cache = new SeenMessageCache(16, 60_000); // nesil başına 8 kayıt
+        UUID[] ids = new UUID[17];
+        for (int i = 0; i < ids.length; i++) ids[i] = UUID.randomUUID();
+
+        for (int i = 0; i <= 8; i++) assertTrue(cache.add(ids[i]));
+        assertEquals(1L, cache.snapshot().get("earlyRotations"));
+        assertTrue(cache.contains(ids[0])); // önceki nesilde
+
+        for (int i = 9; i < ids.length; i++) assertTrue(cache.add(ids[i]));
+        assertEquals(2L, cache.snapshot().get("earlyRotations"));
+        assertFalse(cache.contains(ids[0]));
+        assertTrue(cache.contains(ids[8]));
+    }
+}
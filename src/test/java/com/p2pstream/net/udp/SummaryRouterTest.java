@@ -0,0 +1,109 @@
+package com.p2pstream.net.udp;
+
+import com.p2pstream.service.FileService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SummaryRouterTest {
+
+    private static final String SENDER = "10.0.0.2";
+
+    @TempDir
+    Path dir;
+
+    private FileService senderFiles;
+    private SummaryRouter sender;
+    private SummaryRouter receiver;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.createDirectories(dir.resolve("lib"));
+        senderFiles = new FileService(dir.resolve("lib").toString(), dir.resolve("idx1").toString());
+        sender = new SummaryRouter(senderFiles);
+        sender.tick(); // ilk onarım FULL'ü (varsa) aradan çıksın
+        receiver = new SummaryRouter(new FileService(dir.resolve("empty").toString(), dir.resolve("idx2").toString()));
+    }
+
+    // Kısa ad: birkaç yeni bit, DELTA'ya sığar
+    private byte[] addFileAndTick(String name) throws IOException {
+        Files.writeString(dir.resolve("lib").resolve(name), name);
+        senderFiles.scanFiles();
+        byte[] delta = sender.tick();
+        assertNotNull(delta);
+        assertEquals(SummaryRouter.KIND_DELTA, delta[1]);
+        return delta;
+    }
+
+    private boolean matches(String query) {
+        return receiver.mightMatch(SENDER, SummaryRouter.queryHashes(query));
+    }
+
+    @Test
+    void unknownNeighbourAlwaysMatches() {
+        assertTrue(matches("zzz"));
+    }
+
+    @Test
+    void fullThenDeltasInOrder() throws IOException {
+        assertNull(receiver.onSummary(SENDER, sender.encodeFull()));
+        assertFalse(matches("ab1"));
+
+        assertNull(receiver.onSummary(SENDER, addFileAndTick("ab1")));
+        assertNull(receiver.onSummary(SENDER, addFileAndTick("cd2")));
+        assertTrue(matches("ab1"));
+        assertTrue(matches("cd2"));
+        assertFalse(matches("zzz"));
+    }
+
+    @Test
+    void gapRequestsFullAndFullRepairsSummary() throws IOException {
+        assertNull(receiver.onSummary(SENDER, sender.encodeFull()));
+        addFileAndTick("ab1"); // kayboldu
+        byte[] reply = receiver.onSummary(SENDER, addFileAndTick("cd2"));
+
+        assertArrayEquals(new byte[]{SummaryRouter.VERSION, SummaryRouter.KIND_REQUEST}, reply);
+        assertTrue(matches("zzz")); // özet artık bilinmiyor
+        // Aynı komşudan hemen ikinci bir istek gitmez
+        assertNull(receiver.onSummary(SENDER, addFileAndTick("ef3")));
+
+        byte[] full = sender.onSummary("10.0.0.9", reply);
+        assertEquals(SummaryRouter.KIND_FULL, full[1]);
+        assertNull(receiver.onSummary(SENDER, full));
+        assertTrue(matches("ab1"));
+        assertTrue(matches("ef3"));
+        assertFalse(matches("zzz"));
+    }
+
+    @Test
+    void deltaBeforeAnyFullRequestsFull() throws IOException {
+        byte[] reply = receiver.onSummary(SENDER, addFileAndTick("ab1"));
+        assertArrayEquals(new byte[]{SummaryRouter.VERSION, SummaryRouter.KIND_REQUEST}, reply);
+    }
+
+    @Test
+    void lateDeltaIsIgnoredWithoutDroppingSummary() throws IOException {
+        assertNull(receiver.onSummary(SENDER, sender.encodeFull()));
+        byte[] first = addFileAndTick("ab1");
+        assertNull(receiver.onSummary(SENDER, first));
+        assertNull(receiver.onSummary(SENDER, addFileAndTick("cd2")));
+
+        assertNull(receiver.onSummary(SENDER, first));
+        assertFalse(matches("zzz"));
+        assertTrue(matches("cd2"));
+        assertEquals(1L, receiver.snapshot().get("staleDeltas"));
+    }
+
+    @Test
+    void truncatedSummaryIsRejected() {
+        byte[] full = sender.encodeFull();
+        assertThrows(IOException.class, () -> receiver.onSummary(SENDER, Arrays.copyOf(full, 20)));
+    }
+}
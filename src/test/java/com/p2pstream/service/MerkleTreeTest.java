@@ -0,0 +1,63 @@
+package com.p2pstream.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MerkleTreeTest {
+
+    private static byte[] leaf(int i) {
+        return MerkleTree.hashChunk(ByteBuffer.wrap(("chunk-" + i).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] leaves(int count) {
+        byte[] all = new byte[count * MerkleTree.HASH_BYTES];
+        for (int i = 0; i < count; i++) System.arraycopy(leaf(i), 0, all, i * MerkleTree.HASH_BYTES, MerkleTree.HASH_BYTES);
+        return all;
+    }
+
+    private static byte[] parent(byte[] left, byte[] right) {
+        MessageDigest d = MerkleTree.newDigest();
+        d.update(left);
+        d.update(right);
+        return d.digest();
+    }
+
+    @Test
+    void singleLeafIsRoot() {
+        assertEquals(MerkleTree.toHex(leaf(0)), MerkleTree.rootHex(leaves(1)));
+    }
+
+    @Test
+    void oddLeafIsPromotedUnchanged() {
+        // 3 yaprak: kök = H(H(0||1) || 2)
+        byte[] expected = parent(parent(leaf(0), leaf(1)), leaf(2));
+        assertEquals(MerkleTree.toHex(expected), MerkleTree.rootHex(leaves(3)));
+
+        // 5 yaprak: kök = H(H(H(0||1) || H(2||3)) || 4)
+        byte[] left = parent(parent(leaf(0), leaf(1)), parent(leaf(2), leaf(3)));
+        assertEquals(MerkleTree.toHex(parent(left, leaf(4))), MerkleTree.rootHex(leaves(5)));
+    }
+
+    @Test
+    void rootDependsOnEveryLeaf() {
+        String root = MerkleTree.rootHex(leaves(7));
+        byte[] changed = leaves(7);
+        changed[6 * MerkleTree.HASH_BYTES] ^= 1;
+        assertNotEquals(root, MerkleTree.rootHex(changed));
+    }
+
+    @Test
+    void verifyChunkChecksLeafAndBounds() {
+        byte[] hashes = leaves(3);
+        ByteBuffer chunk = ByteBuffer.wrap("chunk-2".getBytes(StandardCharsets.UTF_8));
+        assertTrue(MerkleTree.verifyChunk(hashes, 2, chunk));
+        assertEquals(0, chunk.position());
+        assertFalse(MerkleTree.verifyChunk(hashes, 1, chunk));
+        assertFalse(MerkleTree.verifyChunk(hashes, 3, chunk));
+    }
+}
@@ -0,0 +1,81 @@
+package com.p2pstream.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RangeStreamerTest {
+
+    private static void assertRange(RangeStreamer.Range r, long start, long end) {
+        assertEquals(start, r.start);
+        assertEquals(end, r.end);
+    }
+
+    @Test
+    void noOrMalformedHeaderServesWholeFile() {
+        assertNull(RangeStreamer.parse(null, 100));
+        assertNull(RangeStreamer.parse("items=0-10", 100));
+        assertNull(RangeStreamer.parse("bytes=abc", 100));
+        assertNull(RangeStreamer.parse("bytes=10-5", 100));
+    }
+
+    @Test
+    void openAndClosedRanges() {
+        assertRange(RangeStreamer.parse("bytes=0-", 100).get(0), 0, 99);
+        assertRange(RangeStreamer.parse("bytes=10-19", 100).get(0), 10, 19);
+        assertRange(RangeStreamer.parse("bytes=90-500", 100).get(0), 90, 99);
+    }
+
+    @Test
+    void suffixRange() {
+        assertRange(RangeStreamer.parse("bytes=-10", 100).get(0), 90, 99);
+        assertRange(RangeStreamer.parse("bytes=-500", 100).get(0), 0, 99);
+    }
+
+    @Test
+    void multiRangeSkipsUnsatisfiableParts() {
+        List<RangeStreamer.Range> ranges = RangeStreamer.parse("bytes=0-9, 200-300, -5", 100);
+        assertEquals(2, ranges.size());
+        assertRange(ranges.get(0), 0, 9);
+        assertRange(ranges.get(1), 95, 99);
+    }
+
+    @Test
+    void tooManyRangesServesWholeFile() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= RangeStreamer.MAX_RANGES; i++) header.append(',').append(i).append('-').append(i);
+        assertNull(RangeStreamer.parse(header.toString(), 100));
+    }
+
+    @Test
+    void unsatisfiableIsEmptyListFor416() {
+        assertTrue(RangeStreamer.parse("bytes=100-", 100).isEmpty());
+        assertTrue(RangeStreamer.parse("bytes=-0", 100).isEmpty());
+        assertTrue(RangeStreamer.parse("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    void multipartLengthMatchesWrittenBody(@TempDir Path dir) throws IOException {
+        byte[] content = new byte[1000];
+        for (int i = 0; i < content.length; i++) content[i] = (byte) i;
+        Path file = dir.resolve("v.mp4");
+        Files.write(file, content);
+
+        List<RangeStreamer.Range> ranges = RangeStreamer.parse("bytes=0-9,500-599", content.length);
+        String boundary = RangeStreamer.newBoundary();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (FileChannel channel = FileChannel.open(file)) {
+            RangeStreamer.writeMultipart(channel, ranges, boundary, "video/mp4", content.length,
+                    RangeStreamer.sinkFor(out), null);
+        }
+        assertEquals(RangeStreamer.multipartLength(ranges, boundary, "video/mp4", content.length), out.size());
+    }
+}
@@ -0,0 +1,81 @@
+package com.p2pstream.service;
+
+import com.p2pstream.model.VideoMetadata;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrigramIndexTest {
+
+    private static final List<String> NAMES = List.of(
+            "Holiday_2023.mp4", "holiday_trailer.mkv", "İSTANBUL gece.mp4", "istanbul_sabah.mp4",
+            "a.mp4", "ab", "Lecture 01 - Intro.mp4", "lecture_02.MP4", "ÇAY_ocağı.avi");
+
+    private static final List<String> QUERIES = List.of(
+            "", "a", "A", "ab", "mp", "mp4", ".MP4", "holiday", "HOLI", "day_", "istanbul", "İST", "gece",
+            "lecture 0", "_0", "çay", "ÇAY", "ocağı", "zzz", "intro.mp4x");
+
+    private static TrigramIndex index(List<VideoMetadata> files) {
+        TrigramIndex index = new TrigramIndex();
+        for (VideoMetadata meta : files) index.put(meta);
+        return index;
+    }
+
+    private static List<VideoMetadata> files() {
+        return NAMES.stream()
+                .map(n -> new VideoMetadata("h" + n.hashCode(), n, 1, 1))
+                .collect(Collectors.toList());
+    }
+
+    // FileService'in SEARCH_ENGINE=linear yolu
+    private static Set<String> linear(List<VideoMetadata> files, String query) {
+        String q = TrigramIndex.fold(query);
+        return files.stream()
+                .filter(m -> TrigramIndex.fold(m.getFileName()).contains(q))
+                .map(VideoMetadata::getFileHash)
+                .collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    private static Set<String> hashes(List<VideoMetadata> results) {
+        return results.stream().map(VideoMetadata::getFileHash).collect(Collectors.toCollection(TreeSet::new));
+    }
+
+    @Test
+    void matchesLinearSearchIncludingShortQueries() {
+        List<VideoMetadata> files = files();
+        TrigramIndex index = index(files);
+        for (String q : QUERIES) {
+            assertEquals(linear(files, q), hashes(index.search(q, Integer.MAX_VALUE)), "query: " + q);
+        }
+    }
+
+    @Test
+    void removeAndReplaceKeepIndexConsistent() {
+        List<VideoMetadata> files = files();
+        TrigramIndex index = index(files);
+        index.remove(files.get(0));
+        VideoMetadata renamed = new VideoMetadata(files.get(1).getFileHash(), "vacation.mkv", 1, 1);
+        index.put(renamed);
+
+        List<VideoMetadata> now = new ArrayList<>(files.subList(2, files.size()));
+        now.add(renamed);
+        for (String q : List.of("holiday", "vacation", "mkv", "a")) {
+            assertEquals(linear(now, q), hashes(index.search(q, Integer.MAX_VALUE)), "query: " + q);
+        }
+        assertEquals(NAMES.size() - 1, index.size());
+    }
+
+    @Test
+    void respectsLimit() {
+        TrigramIndex index = index(files());
+        assertEquals(2, index.search("mp4", 2).size());
+        assertEquals(2, index.search("", 2).size());
+        assertTrue(index.search("mp4", 0).isEmpty());
+    }
+}